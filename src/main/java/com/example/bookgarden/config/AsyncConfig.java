@@ -0,0 +1,80 @@
+package com.example.bookgarden.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConfig.class);
+
+    @Bean(name = "recommendationExecutor")
+    public ThreadPoolTaskExecutor recommendationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("recommendation-");
+        // Việc nền của gợi ý (refresh user, cập nhật co-purchase, làm mới cache) có thể bỏ vì rebuild định kỳ sẽ tính lại;
+        // không ném TaskRejectedException về luồng request khi hàng đợi đầy
+        executor.setRejectedExecutionHandler((task, pool) ->
+                logger.warn("Recommendation executor queue is full, dropping a background task"));
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "notificationExecutor")
+    public ThreadPoolTaskExecutor notificationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("notification-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Hàng đợi đầy thì bài viết vẫn ở PendingModeration và được job quét của PostModerationService gửi lại sau
+    @Bean(name = "moderationExecutor")
+    public ThreadPoolTaskExecutor moderationExecutor(@Value("${post.moderation.workers:2}") int workers,
+                                                     @Value("${post.moderation.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("moderation-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Ghi event SSE ra socket, tách khỏi thread dispatcher và thread đọc relay. Mỗi kết nối có nhiều nhất một tác vụ trong hàng đợi;
+    // hàng đợi đầy thì NotificationStreamService đóng kết nối và client kết nối lại với Last-Event-ID
+    @Bean(name = "notificationStreamExecutor")
+    public ThreadPoolTaskExecutor notificationStreamExecutor(@Value("${notification.stream.workers:2}") int workers,
+                                                             @Value("${notification.stream.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("notification-stream-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Khi bật broker STOMP, Spring Boot không tạo taskScheduler nên các job @Scheduled sẽ dùng chung pool heartbeat của broker;
+    // tách riêng để job dài (rebuild gợi ý, dọn thông báo) không làm trễ heartbeat và ngược lại
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.initialize();
+        return scheduler;
+    }
+}
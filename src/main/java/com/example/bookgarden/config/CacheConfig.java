@@ -1,21 +1,56 @@
 package com.example.bookgarden.config;
 
+import com.example.bookgarden.service.RecommendationService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager(
+    public CacheManager cacheManager(ObjectProvider<RecommendationService> recommendationService,
+                                     @Qualifier("recommendationExecutor") Executor recommendationExecutor,
+                                     @Value("${recommendation.cache.ttl-minutes:30}") long recommendationTtl,
+                                     @Value("${recommendation.cache.refresh-minutes:10}") long recommendationRefresh,
+                                     @Value("${recommendation.cache.max-size:10000}") long recommendationMaxSize) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(
                 "bookDTOCache", "categoryCache", "categoryNameCache", "authors", "bookDetails", "bookDetailDTOCache",
                 "reviews", "relatedBooksCache", "bestSellerBooksCache", "authorDTOCache", "orderDTOCache",
-                "orderItemDTOCache", "searchHistoryCache", "recommendations", "discountedBooksCache", "discountCache");
+                "orderItemDTOCache", "searchHistoryCache", "discountedBooksCache", "discountCache");
+        cacheManager.registerCustomCache("revenueSeriesCache", Caffeine.newBuilder()
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .maximumSize(500)
+                .build());
+        cacheManager.registerCustomCache("topCustomersCache", Caffeine.newBuilder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .maximumSize(100)
+                .build());
+        // Id sách yêu thích của từng user, cập nhật trực tiếp khi thêm/xóa nên chỉ cần hết hạn theo thời gian không truy cập
+        cacheManager.registerCustomCache("wishListBookIdsCache", Caffeine.newBuilder()
+                .expireAfterAccess(30, TimeUnit.MINUTES)
+                .maximumSize(10000)
+                .build());
+        cacheManager.registerCustomCache("searchQueryBooksCache", Caffeine.newBuilder()
+                .maximumSize(20000)
+                .build());
+        // User còn hoạt động được tính lại nền trước khi hết hạn (refresh-ahead), user không quay lại sẽ hết hạn theo TTL
+        cacheManager.registerCustomCache("recommendations", Caffeine.newBuilder()
+                .refreshAfterWrite(recommendationRefresh, TimeUnit.MINUTES)
+                .expireAfterWrite(recommendationTtl, TimeUnit.MINUTES)
+                .maximumSize(recommendationMaxSize)
+                .executor(recommendationExecutor)
+                .build(userId -> recommendationService.getObject().computeRecommendations((String) userId)));
+        return cacheManager;
     }
 }
@@ -0,0 +1,57 @@
+package com.example.bookgarden.config;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// Đếm số lệnh gửi tới MongoDB trong mỗi HTTP request và ghi log, dùng để đo số round trip của từng thao tác
+// (ví dụ các API giỏ hàng). Bật bằng mongodb.round-trip-logging=true.
+@Configuration
+@ConditionalOnProperty(name = "mongodb.round-trip-logging", havingValue = "true")
+public class MongoRoundTripConfig implements WebMvcConfigurer {
+    private static final Logger logger = LoggerFactory.getLogger(MongoRoundTripConfig.class);
+    private static final ThreadLocal<int[]> ROUND_TRIPS = new ThreadLocal<>();
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer roundTripCounter() {
+        return builder -> builder.addCommandListener(new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                int[] counter = ROUND_TRIPS.get();
+                if (counter != null) {
+                    counter[0]++;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                ROUND_TRIPS.set(new int[1]);
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                int[] counter = ROUND_TRIPS.get();
+                ROUND_TRIPS.remove();
+                if (counter != null) {
+                    logger.info("{} {} -> {} MongoDB round trips", request.getMethod(), request.getRequestURI(), counter[0]);
+                }
+            }
+        });
+    }
+}
@@ -1,14 +1,46 @@
 package com.example.bookgarden.config;
 
+import com.example.bookgarden.security.StompAuthChannelInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+// Broker được giới hạn rõ ràng: pool thread cho kênh vào/ra, heartbeat hai chiều, và giới hạn thời gian/bộ đệm gửi.
+// Client đọc chậm vượt sendTimeLimit hoặc sendBufferSizeLimit sẽ bị đóng phiên thay vì để tin nhắn dồn trong bộ nhớ.
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    @Lazy
+    @Autowired
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+    @Value("${websocket.inbound.max-pool-size:8}")
+    private int inboundMaxPoolSize;
+    @Value("${websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+    @Value("${websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+    @Value("${websocket.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+    @Value("${websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimit;
+    @Value("${websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws").setAllowedOrigins("*").withSockJS();
@@ -16,8 +48,37 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        // /topic/broadcast cho sự kiện chung, /user/queue/notifications cho thông báo riêng của user đã xác thực;
+        // /topic/notifications/broadcast và /topic/notifications/{userId} giữ lại cho client cũ (xem LegacyNotificationMirror)
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         registry.setApplicationDestinationPrefixes("/app");
+        registry.setUserDestinationPrefix("/user");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthChannelInterceptor);
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
     }
-}
 
+    // Hàng đợi kênh ra không giới hạn: một broadcast sinh một tin nhắn cho mỗi phiên nên hàng đợi cố định sẽ từ chối tin
+    // khi số phiên vượt sức chứa. Client chậm vẫn bị chặn theo từng phiên bởi sendTimeLimit/sendBufferSizeLimit bên dưới,
+    // độ dài hàng đợi theo dõi qua WebSocketStatsService.
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+}
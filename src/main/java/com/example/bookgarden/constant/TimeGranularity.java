@@ -0,0 +1,64 @@
+package com.example.bookgarden.constant;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+public enum TimeGranularity {
+    DAY("day", ChronoUnit.DAYS),
+    WEEK("week", ChronoUnit.WEEKS),
+    MONTH("month", ChronoUnit.MONTHS),
+    YEAR("year", ChronoUnit.YEARS);
+
+    private final String unit;
+    private final ChronoUnit chronoUnit;
+
+    TimeGranularity(String unit, ChronoUnit chronoUnit) {
+        this.unit = unit;
+        this.chronoUnit = chronoUnit;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public ChronoUnit getChronoUnit() {
+        return chronoUnit;
+    }
+
+    public LocalDate truncate(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            case YEAR:
+                return date.withDayOfYear(1);
+            default:
+                return date;
+        }
+    }
+
+    public long countBuckets(LocalDate from, LocalDate to) {
+        return chronoUnit.between(truncate(from), truncate(to)) + 1;
+    }
+
+    public TimeGranularity coarser() {
+        TimeGranularity[] values = TimeGranularity.values();
+        return ordinal() + 1 < values.length ? values[ordinal() + 1] : this;
+    }
+
+    // Trả về null khi không truyền hoặc "auto" để hệ thống tự chọn độ chi tiết
+    public static TimeGranularity fromString(String value) {
+        if (value == null || value.isBlank() || "auto".equalsIgnoreCase(value)) {
+            return null;
+        }
+        for (TimeGranularity granularity : TimeGranularity.values()) {
+            if (granularity.name().equalsIgnoreCase(value)) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("Unknown TimeGranularity: " + value);
+    }
+}
@@ -12,6 +12,7 @@ import com.example.bookgarden.security.JwtTokenProvider;
 import com.example.bookgarden.service.*;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -19,6 +20,7 @@ import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -45,6 +47,14 @@ public class AdminController{
     private PasswordEncoder passwordEncoder;
     @Autowired
     private OTPService OTPService;
+    @Autowired
+    private WebSocketStatsService webSocketStatsService;
+    @GetMapping("/websocket/stats")
+    public ResponseEntity<GenericResponse> getWebSocketStats(@RequestHeader("Authorization") String authorizationHeader){
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return webSocketStatsService.getStats(userId);
+    }
     @GetMapping("/dashboard/users")
     public ResponseEntity<GenericResponse> getAllUsers(@RequestHeader("Authorization") String authorizationHeader){
         String token = authorizationHeader.substring(7);
@@ -101,6 +111,16 @@ public class AdminController{
         return statisticService.getStatistics(userId);
     }
 
+    @GetMapping("/statistics/revenue")
+    public ResponseEntity<GenericResponse> getRevenueSeries(@RequestHeader("Authorization") String authorizationHeader,
+                                                            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+                                                            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to,
+                                                            @RequestParam(required = false) String granularity) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return statisticService.getRevenueSeries(userId, from, to, granularity);
+    }
+
     @PostMapping("/register-manager")
     public ResponseEntity<?> registerManager(@RequestHeader("Authorization") String authorizationHeader,
                                              @Valid @RequestBody RegisterDTO registerDTO, BindingResult bindingResult) {
@@ -5,6 +5,7 @@ import com.example.bookgarden.entity.Discount;
 import com.example.bookgarden.security.JwtTokenProvider;
 import com.example.bookgarden.service.BookService;
 import com.example.bookgarden.service.CartService;
+import com.example.bookgarden.service.CoPurchaseService;
 import com.example.bookgarden.service.DiscountService;
 import com.example.bookgarden.service.WishListService;
 import jakarta.validation.Valid;
@@ -31,11 +32,13 @@ public class BookController {
     private WishListService wishListService;
     @Autowired
     private DiscountService discountService;
+    @Autowired
+    private CoPurchaseService coPurchaseService;
 
     // Get all books
     @GetMapping("")
-    public ResponseEntity<?> getAllBooks (){
-        return bookService.getAllBooks();
+    public ResponseEntity<?> getAllBooks (@RequestHeader(value = "Authorization", required = false) String authorizationHeader){
+        return wishListService.markWishListed(optionalUserId(authorizationHeader), bookService.getAllBooks());
     }
 
     //Get all deleted books
@@ -54,14 +57,23 @@ public class BookController {
 
     // Get list related books
     @GetMapping("/{bookId}/related")
-    public ResponseEntity<GenericResponse> getRelatedBooks(@PathVariable String bookId) {
-        return bookService.getRelatedBooks(bookId);
+    public ResponseEntity<GenericResponse> getRelatedBooks(@RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+                                                           @PathVariable String bookId) {
+        return wishListService.markWishListed(optionalUserId(authorizationHeader), bookService.getRelatedBooks(bookId));
+    }
+
+    // Get books frequently bought together
+    @GetMapping("/{bookId}/also-bought")
+    public ResponseEntity<GenericResponse> getAlsoBoughtBooks(@RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+                                                              @PathVariable String bookId,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        return wishListService.markWishListed(optionalUserId(authorizationHeader), coPurchaseService.getAlsoBoughtBooks(bookId, limit));
     }
 
     // Get Best seller books
     @GetMapping("/best-seller")
-    public ResponseEntity<GenericResponse> getBestSellerBooks(){
-        return bookService.getBestSellerBooks();
+    public ResponseEntity<GenericResponse> getBestSellerBooks(@RequestHeader(value = "Authorization", required = false) String authorizationHeader){
+        return wishListService.markWishListed(optionalUserId(authorizationHeader), bookService.getBestSellerBooks());
     }
     //Add book
     @PostMapping("/add")
@@ -169,8 +181,17 @@ public class BookController {
     }
     //Get All Discount
     @GetMapping("/discounts")
-    public ResponseEntity<GenericResponse> getAllDiscountedBooks() {
-        return discountService.getAllDiscountedBooks();
+    public ResponseEntity<GenericResponse> getAllDiscountedBooks(@RequestHeader(value = "Authorization", required = false) String authorizationHeader) {
+        return wishListService.markWishListed(optionalUserId(authorizationHeader), discountService.getAllDiscountedBooks());
+    }
+
+    // Trang danh mục không bắt buộc đăng nhập; có token thì trả kèm trạng thái yêu thích của user
+    private String optionalUserId(String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return null;
+        }
+        String token = authorizationHeader.substring(7);
+        return jwtTokenProvider.validateToken(token) ? jwtTokenProvider.getUserIdFromJwt(token) : null;
     }
 }
 
@@ -1,5 +1,6 @@
 package com.example.bookgarden.controller;
 
+import com.example.bookgarden.constant.TimeGranularity;
 import com.example.bookgarden.dto.*;
 import com.example.bookgarden.repository.BookRepository;
 import com.example.bookgarden.security.JwtTokenProvider;
@@ -16,6 +17,8 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/v1/customer")
 public class CustomerController {
+    private static final int MAX_TOP_CUSTOMERS = 50;
+
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
     @Autowired
@@ -41,10 +44,20 @@ public class CustomerController {
 
     //Get wishlist
     @GetMapping("/wishList")
-    public ResponseEntity<GenericResponse> getWishList(@RequestHeader("Authorization") String authorizationHeader) {
+    public ResponseEntity<GenericResponse> getWishList(@RequestHeader("Authorization") String authorizationHeader,
+                                                       @RequestParam(required = false) Integer page,
+                                                       @RequestParam(defaultValue = "10") int size) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return wishListService.getWishList(userId, page, size);
+    }
+
+    //Get ids of wishlisted books
+    @GetMapping("/wishList/bookIds")
+    public ResponseEntity<GenericResponse> getWishListBookIds(@RequestHeader("Authorization") String authorizationHeader) {
         String token = authorizationHeader.substring(7);
         String userId = jwtTokenProvider.getUserIdFromJwt(token);
-        return wishListService.getWishList(userId);
+        return wishListService.getWishListBookIds(userId);
     }
 
     @DeleteMapping("/wishlist/{bookId}")
@@ -128,14 +141,27 @@ public class CustomerController {
 
     //Top Order Customers
     @GetMapping("/top-order")
-    public ResponseEntity<GenericResponse> getTopCustomers() {
+    public ResponseEntity<GenericResponse> getTopCustomers(@RequestParam(required = false) String period,
+                                                           @RequestParam(defaultValue = "orders") String rankBy,
+                                                           @RequestParam(defaultValue = "10") int limit) {
         try {
-            List<CustomerOrderCountDTO> topCustomers = orderService.getTopCustomers();
+            // Chuẩn hóa trước khi gọi service vì period, rankBy, limit là khóa của topCustomersCache
+            TimeGranularity granularity = TimeGranularity.fromString(period);
+            String ranking = "revenue".equalsIgnoreCase(rankBy) ? "revenue" : "orders";
+            int boundedLimit = Math.max(1, Math.min(limit, MAX_TOP_CUSTOMERS));
+            List<CustomerOrderCountDTO> topCustomers = orderService.getTopCustomers(
+                    granularity != null ? granularity.getUnit() : null, ranking, boundedLimit);
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Lấy danh sách khách hàng mua nhiều nhất thành công")
                     .data(topCustomers)
                     .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Khoảng thời gian không hợp lệ")
+                    .data(e.getMessage())
+                    .build());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
                     .success(false)
@@ -3,16 +3,19 @@ package com.example.bookgarden.controller;
 import com.example.bookgarden.dto.GenericResponse;
 import com.example.bookgarden.dto.NotificationRequestDTO;
 import com.example.bookgarden.entity.Notification;
+import com.example.bookgarden.exception.AccessDeniedException;
 import com.example.bookgarden.security.JwtTokenProvider;
 import com.example.bookgarden.service.NotificationService;
 import jakarta.validation.Valid;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,10 +30,52 @@ public class NotificationController {
 
     //Get notification
     @GetMapping("")
-    ResponseEntity<GenericResponse> getNotifications (@RequestHeader("Authorization") String authorizationHeader){
+    ResponseEntity<GenericResponse> getNotifications (@RequestHeader("Authorization") String authorizationHeader,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "20") int limit){
         String token = authorizationHeader.substring(7);
         String userId = jwtTokenProvider.getUserIdFromJwt(token);
-        return notificationService.getNotifications(userId);
+        return notificationService.getNotifications(userId, cursor, limit);
+    }
+    //Issue a short-lived token for the notification stream
+    @PostMapping("/stream-token")
+    public ResponseEntity<GenericResponse> createStreamToken(@RequestHeader("Authorization") String authorizationHeader) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return notificationService.createStreamToken(userId);
+    }
+    //Stream notifications (Server-Sent Events)
+    // Client có thể gửi header Authorization như các API khác; EventSource của trình duyệt không gửi được header nên
+    // lấy token ngắn hạn từ POST /stream-token rồi mở /stream?token=... Token chỉ được kiểm tra lúc kết nối: khi hết hạn,
+    // lần kết nối lại tự động của EventSource bị từ chối và client cần lấy token mới (kèm Last-Event-ID để không mất event).
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamNotifications(@RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+                                          @RequestParam(value = "token", required = false) String streamToken,
+                                          @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        String userId = null;
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+            userId = jwtTokenProvider.getUserIdFromJwt(authorizationHeader.substring(7));
+        } else if (streamToken != null) {
+            userId = jwtTokenProvider.getUserIdFromStreamToken(streamToken);
+        }
+        if (userId == null) {
+            throw new AccessDeniedException("Token không hợp lệ hoặc đã hết hạn");
+        }
+        return notificationService.streamNotifications(userId, lastEventId);
+    }
+    //Get unread notification count
+    @GetMapping("/unread-count")
+    public ResponseEntity<GenericResponse> getUnreadCount(@RequestHeader("Authorization") String authorizationHeader) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return notificationService.getUnreadCount(userId);
+    }
+    //Mark all as read
+    @PutMapping("/read-all")
+    public ResponseEntity<GenericResponse> markAllAsRead(@RequestHeader("Authorization") String authorizationHeader) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return notificationService.markAllAsRead(userId);
     }
     //Create Notifications for all user
     @PostMapping("/create-for-all")
@@ -54,6 +99,14 @@ public class NotificationController {
         String userId = jwtTokenProvider.getUserIdFromJwt(token);
         return notificationService.createNotificationForAll(userId, notificationRequestDTO);
     }
+    //Get progress of a notification fan-out
+    @GetMapping("/fanout/{jobId}")
+    public ResponseEntity<GenericResponse> getFanoutProgress(@RequestHeader("Authorization") String authorizationHeader,
+                                                             @PathVariable String jobId) {
+        String token = authorizationHeader.substring(7);
+        String userId = jwtTokenProvider.getUserIdFromJwt(token);
+        return notificationService.getFanoutProgress(userId, jobId);
+    }
     //Mark as read
     @PutMapping("/{notificationId}/read")
     public ResponseEntity<GenericResponse> markAsRead(@RequestHeader("Authorization") String authorizationHeader,
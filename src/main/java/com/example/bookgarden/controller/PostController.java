@@ -57,6 +57,13 @@ public class PostController {
         return postService.getAllApprovedPosts();
     }
 
+    @GetMapping("/feed")
+    public ResponseEntity<GenericResponse> getPostFeed(@RequestParam(required = false) String cursor,
+                                                       @RequestParam(defaultValue = "20") int limit,
+                                                       @RequestParam(defaultValue = "latest") String sort){
+        return postService.getApprovedPostFeed(cursor, limit, sort);
+    }
+
     @GetMapping("/{postId}")
     public ResponseEntity<GenericResponse> getPostById(@PathVariable String postId){
         return postService.getPostById(postId);
@@ -1,6 +1,7 @@
 package com.example.bookgarden.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -29,9 +30,18 @@ public class BookDTO {
     private Date startDate;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
     private Date endDate;
+    // Chỉ có khi request kèm token: sách đã nằm trong danh sách yêu thích của user hay chưa
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean wishListed;
     public BookDTO(String _id, String title)
     {
         this._id = _id;
         this.title = title;
     }
+
+    // BookDTO nằm trong cache dùng chung giữa các user nên không gắn cờ trực tiếp mà trả về bản sao
+    public BookDTO withWishListed(boolean wishListed) {
+        return new BookDTO(_id, title, categories, authors, price, stock, soldQuantity, description, isbn, image, isDeleted,
+                publisher, discountPercent, startDate, endDate, wishListed);
+    }
 }
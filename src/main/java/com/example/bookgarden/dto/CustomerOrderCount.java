@@ -15,4 +15,8 @@ public class CustomerOrderCount {
     @Field("_id")
     private ObjectId userId;
     private long orderCount;
+    private double totalSpent;
+    private String fullName;
+    private String email;
+    private String avatar;
 }
\ No newline at end of file
@@ -15,4 +15,5 @@ public class CustomerOrderCountDTO {
     private String email;
     private String avatar;
     private long orderCount;
+    private double totalSpent;
 }
@@ -0,0 +1,33 @@
+package com.example.bookgarden.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Tiến độ một lượt gửi thông báo hàng loạt
+@Data
+@NoArgsConstructor
+public class NotificationFanoutDTO {
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private String jobId;
+    private String title;
+    // Id broadcast khi gửi theo chế độ fan-out-on-read (không tạo thông báo riêng cho từng user)
+    private String broadcastId;
+    private volatile String status = STATUS_RUNNING;
+    private volatile long delivered;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss", timezone = "UTC")
+    private Date startedAt = new Date();
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss", timezone = "UTC")
+    private volatile Date finishedAt;
+    private volatile String error;
+
+    public NotificationFanoutDTO(String jobId, String title) {
+        this.jobId = jobId;
+        this.title = title;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bookgarden.dto;
+
+import com.example.bookgarden.entity.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Một trang hộp thư thông báo; nextCursor null khi đã hết
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPageDTO {
+    private List<Notification> items;
+    private String nextCursor;
+    private long unreadCount;
+}
@@ -0,0 +1,16 @@
+package com.example.bookgarden.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Một trang bảng tin bài viết; nextCursor null khi đã hết
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostPageDTO {
+    private List<PostResponseDTO> items;
+    private String nextCursor;
+}
@@ -18,4 +18,5 @@ public class PostResponseDTO {
     private BookPostDTO book;
     private String image;
     private List<CommentDTO> comments;
+    private Integer commentCount;
 }
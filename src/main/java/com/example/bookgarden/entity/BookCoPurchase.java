@@ -0,0 +1,35 @@
+package com.example.bookgarden.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Document(collection = "book_copurchases")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookCoPurchase implements Serializable {
+    @Id
+    private ObjectId book;
+    private long purchaseCount;
+    private Map<String, Long> coCounts = new HashMap<>();
+    private List<ObjectId> neighbors = new ArrayList<>();
+    private List<Double> scores = new ArrayList<>();
+    private Date updatedAt = new Date();
+
+    public BookCoPurchase(ObjectId book) {
+        this.book = book;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bookgarden.entity;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+
+// Thông báo gửi cho toàn bộ khách hàng, chỉ lưu một bản; trạng thái đã đọc của từng user nằm trong NotificationCursor
+@Document(collection = "broadcast_notifications")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BroadcastNotification implements Serializable {
+    @Id
+    private ObjectId id;
+    private String title;
+    private String message;
+    private String url;
+    @Indexed
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss", timezone = "UTC")
+    private Date createdAt = new Date();
+    private String createdBy = "System";
+}
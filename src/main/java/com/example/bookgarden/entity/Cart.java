@@ -20,10 +20,10 @@ public class Cart implements Serializable {
 
     private ObjectId user;
 
-    private List<ObjectId> items;
+    private List<CartLine> lines;
 
     public Cart(ObjectId user) {
         this.user = user;
-        this.items = new ArrayList<>();
+        this.lines = new ArrayList<>();
     }
 }
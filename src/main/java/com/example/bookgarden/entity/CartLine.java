@@ -0,0 +1,30 @@
+package com.example.bookgarden.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.io.Serializable;
+
+// Dòng sản phẩm nhúng trong giỏ hàng, giữ _id riêng để client tham chiếu khi xóa hoặc đặt hàng
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartLine implements Serializable {
+    @Field("_id")
+    private ObjectId id;
+
+    private ObjectId book;
+
+    private int quantity;
+
+    public CartLine(ObjectId book, int quantity) {
+        this.id = new ObjectId();
+        this.book = book;
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.bookgarden.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Document(collection = "als_factors")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FactorVector implements Serializable {
+    public static final String TYPE_USER = "USER";
+    public static final String TYPE_BOOK = "BOOK";
+
+    // userId hoặc id sách dạng hex, có tiền tố loại để không trùng nhau
+    @Id
+    private String id;
+    @Indexed
+    private String type;
+    private String refId;
+    private List<Float> vector = new ArrayList<>();
+    private Date trainedAt;
+}
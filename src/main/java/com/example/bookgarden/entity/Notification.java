@@ -7,12 +7,19 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
 import java.util.Date;
 
 @Document(collection = "notifications")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_created", def = "{'userId': 1, 'createdAt': -1}"),
+        // Job gộp thông báo hệ thống chưa đọc quá hạn chỉ quét đúng phần thông báo này
+        @CompoundIndex(name = "creator_read_created", def = "{'createdBy': 1, 'read': 1, 'createdAt': 1}")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -28,4 +35,6 @@ public class Notification implements Serializable {
     private Date createdAt = new Date();
     private boolean read = false;
     private String createdBy = "System";
+    // Thời điểm đánh dấu đã đọc, TTL index trên trường này xóa thông báo đã đọc sau notification.retention.read-days
+    private Date readAt;
 }
@@ -0,0 +1,30 @@
+package com.example.bookgarden.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Trạng thái đọc thông báo của một user: mọi broadcast tạo trước lastSeenBroadcast coi như đã đọc,
+// các broadcast mới hơn được đánh dấu riêng lẻ trong readBroadcasts. unreadCount đếm thông báo riêng chưa đọc,
+// null nghĩa là chưa khởi tạo (được đếm lại một lần khi đọc lần đầu).
+@Document(collection = "notification_cursors")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class NotificationCursor implements Serializable {
+    @Id
+    private String userId;
+    private Date lastSeenBroadcast;
+    private List<ObjectId> readBroadcasts = new ArrayList<>();
+    private Long unreadCount;
+}
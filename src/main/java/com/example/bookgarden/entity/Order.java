@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
@@ -14,6 +15,7 @@ import java.util.Date;
 import java.util.List;
 
 @Document(collection = "orders")
+@CompoundIndex(name = "paymentStatus_orderDate", def = "{'paymentStatus': 1, 'orderDate': 1}")
 @Getter
 @Setter
 @NoArgsConstructor
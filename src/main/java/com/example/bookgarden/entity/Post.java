@@ -3,6 +3,8 @@ package com.example.bookgarden.entity;
 import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
@@ -10,6 +12,10 @@ import java.util.Date;
 import java.util.List;
 
 @Document(collection = "posts")
+@CompoundIndexes({
+        @CompoundIndex(name = "status_deleted_posted", def = "{'status': 1, 'deleted': 1, 'postedDate': -1, '_id': -1}"),
+        @CompoundIndex(name = "status_deleted_hot", def = "{'status': 1, 'deleted': 1, 'hotScore': -1, '_id': -1}")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -26,4 +32,9 @@ public class Post implements Serializable {
     private List<ObjectId> comments;
     private boolean deleted = false;
     private String image = null;
+    // Điểm "hot" tính định kỳ bởi PostHotScoreService; null khi bài viết không còn hoạt động gần đây
+    private Double hotScore;
+    // Số lần gọi kiểm duyệt thất bại và thời điểm được thử lại (cũng dùng làm hạn giữ chỗ của worker đang xử lý)
+    private int moderationAttempts = 0;
+    private Date moderationRetryAt;
 }
@@ -9,19 +9,20 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
-@Document(collection = "cartitems")
+@Document(collection = "user_recommendations")
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class CartItem implements Serializable {
+public class UserRecommendation implements Serializable {
     @Id
-    private ObjectId id;
-
-    private ObjectId cart;
-
-    private ObjectId book;
-
-    private int quantity;
+    private String userId;
+    private List<ObjectId> books = new ArrayList<>();
+    private List<Double> scores = new ArrayList<>();
+    private String model;
+    private Date generatedAt = new Date();
 }
@@ -0,0 +1,281 @@
+package com.example.bookgarden.recommendation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.types.ObjectId;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Tìm top-k user tương đồng theo cosine bằng tích vô hướng thưa: chỉ duyệt các user
+// có chung ít nhất một sách với user đang xét, thông qua chỉ mục theo cột của ma trận
+public class CosineSimilarityEngine {
+    private static final int ROWS_PER_TASK = 64;
+
+    private final SparseInteractionMatrix matrix;
+    private final ForkJoinPool pool;
+
+    public CosineSimilarityEngine(SparseInteractionMatrix matrix, ForkJoinPool pool) {
+        this.matrix = matrix;
+        this.pool = pool;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Neighbors {
+        private final int[] users;
+        private final float[] similarities;
+
+        public int size() {
+            return users.length;
+        }
+    }
+
+    public Neighbors topNeighbors(int row, int k) {
+        return topNeighbors(row, k, new float[matrix.getUserCount()], new int[matrix.getUserCount()]);
+    }
+
+    // Giống ImplicitAlsModel, sách user đã tương tác không được gợi ý lại
+    public Map<ObjectId, Double> recommend(int row, int neighborCount, int topN) {
+        return recommend(row, topNeighbors(row, neighborCount), topN, new boolean[matrix.getBookCount()]);
+    }
+
+    public Map<ObjectId, Double> recommend(int row, int neighborCount, int topN, NeighborCandidates candidates, boolean exactRerank) {
+        return recommend(row, topNeighbors(row, neighborCount, candidates, exactRerank, new float[matrix.getBookCount()]), topN,
+                new boolean[matrix.getBookCount()]);
+    }
+
+    public List<Map<ObjectId, Double>> recommendForAll(int neighborCount, int topN) {
+        return recommendForAll(neighborCount, topN, null, true);
+    }
+
+    // Gợi ý cho tương tác mới của một user mà không dựng lại ma trận: chấm cosine hàng đó với ma trận của lần build gần nhất.
+    // excludedRow là hàng cũ của chính user trong ma trận (-1 nếu chưa có); candidates = null thì duyệt qua chỉ mục cột,
+    // ngược lại chỉ tính cosine chính xác với các hàng ứng viên. Sách user đã có không được gợi ý lại
+    public Map<ObjectId, Double> recommendForRow(Map<ObjectId, Double> row, int excludedRow, int neighborCount, int topN, int[] candidates) {
+        float[] rowValues = new float[matrix.getBookCount()];
+        boolean[] ownedColumns = new boolean[matrix.getBookCount()];
+        double squaredSum = 0.0;
+        for (Map.Entry<ObjectId, Double> entry : row.entrySet()) {
+            float value = entry.getValue().floatValue();
+            squaredSum += (double) value * value;
+            int column = matrix.indexOfBook(entry.getKey());
+            if (column >= 0) {
+                rowValues[column] = value;
+                ownedColumns[column] = true;
+            }
+        }
+        float rowNorm = (float) Math.sqrt(squaredSum);
+        if (rowNorm == 0f) {
+            return new LinkedHashMap<>();
+        }
+
+        TopSelector selector;
+        if (candidates != null) {
+            selector = new TopSelector(Math.min(neighborCount, candidates.length));
+            for (int other : candidates) {
+                if (other == excludedRow) continue;
+                float dotProduct = 0f;
+                for (int q = matrix.rowStart(other); q < matrix.rowEnd(other); q++) {
+                    dotProduct += rowValues[matrix.columnIndexAt(q)] * matrix.valueAt(q);
+                }
+                if (dotProduct > 0f) {
+                    selector.offer(other, dotProduct / (rowNorm * matrix.rowNorm(other)));
+                }
+            }
+        } else {
+            float[] dotProducts = new float[matrix.getUserCount()];
+            int[] touched = new int[matrix.getUserCount()];
+            int touchedCount = 0;
+            for (int column = 0; column < rowValues.length; column++) {
+                if (!ownedColumns[column]) continue;
+                for (int q = matrix.columnStart(column); q < matrix.columnEnd(column); q++) {
+                    int other = matrix.rowIndexAt(q);
+                    if (other == excludedRow) continue;
+                    if (dotProducts[other] == 0f) {
+                        touched[touchedCount++] = other;
+                    }
+                    dotProducts[other] += rowValues[column] * matrix.columnValueAt(q);
+                }
+            }
+            selector = new TopSelector(Math.min(neighborCount, touchedCount));
+            for (int i = 0; i < touchedCount; i++) {
+                int other = touched[i];
+                selector.offer(other, dotProducts[other] / (rowNorm * matrix.rowNorm(other)));
+            }
+        }
+        return recommend(selector.toNeighbors(), topN, ownedColumns);
+    }
+
+    // candidates = null: duyệt chính xác mọi user có chung sách; ngược lại chỉ xét các ứng viên LSH
+    public List<Map<ObjectId, Double>> recommendForAll(int neighborCount, int topN, NeighborCandidates candidates, boolean exactRerank) {
+        List<Map<ObjectId, Double>> results = new ArrayList<>(Collections.nCopies(matrix.getUserCount(), null));
+        pool.invoke(new RecommendTask(0, matrix.getUserCount(), neighborCount, topN, candidates, exactRerank, results));
+        return results;
+    }
+
+    // Đánh dấu tạm các cột của hàng row trong mảng excluded (dùng lại giữa các hàng) rồi xóa sau khi chấm điểm
+    private Map<ObjectId, Double> recommend(int row, Neighbors neighbors, int topN, boolean[] excluded) {
+        for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+            excluded[matrix.columnIndexAt(k)] = true;
+        }
+        Map<ObjectId, Double> recommendations = recommend(neighbors, topN, excluded);
+        for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+            excluded[matrix.columnIndexAt(k)] = false;
+        }
+        return recommendations;
+    }
+
+    // excludedColumns: các cột (sách) không được gợi ý
+    private Map<ObjectId, Double> recommend(Neighbors neighbors, int topN, boolean[] excludedColumns) {
+        Map<Integer, Double> bookScores = new HashMap<>();
+        for (int i = 0; i < neighbors.size(); i++) {
+            int neighbor = neighbors.getUsers()[i];
+            double similarity = neighbors.getSimilarities()[i];
+            for (int k = matrix.rowStart(neighbor); k < matrix.rowEnd(neighbor); k++) {
+                int column = matrix.columnIndexAt(k);
+                if (excludedColumns[column]) continue;
+                bookScores.merge(column, similarity * matrix.valueAt(k), Double::sum);
+            }
+        }
+
+        Map<ObjectId, Double> recommendations = new LinkedHashMap<>();
+        bookScores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                .limit(topN)
+                .forEach(entry -> recommendations.put(matrix.getBookId(entry.getKey()), entry.getValue()));
+        return recommendations;
+    }
+
+    private Neighbors topNeighbors(int row, int k, float[] dotProducts, int[] touched) {
+        int touchedCount = 0;
+        for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+            int column = matrix.columnIndexAt(p);
+            float value = matrix.valueAt(p);
+            for (int q = matrix.columnStart(column); q < matrix.columnEnd(column); q++) {
+                int other = matrix.rowIndexAt(q);
+                if (other == row) continue;
+                if (dotProducts[other] == 0f) {
+                    touched[touchedCount++] = other;
+                }
+                dotProducts[other] += value * matrix.columnValueAt(q);
+            }
+        }
+
+        TopSelector selector = new TopSelector(Math.min(k, touchedCount));
+        float rowNorm = matrix.rowNorm(row);
+        for (int i = 0; i < touchedCount; i++) {
+            int other = touched[i];
+            selector.offer(other, dotProducts[other] / (rowNorm * matrix.rowNorm(other)));
+            dotProducts[other] = 0f;
+        }
+        return selector.toNeighbors();
+    }
+
+    // Chỉ tính độ tương đồng với các ứng viên: cosine chính xác qua mảng đặc của hàng đang xét, hoặc giá trị ước lượng
+    private Neighbors topNeighbors(int row, int k, NeighborCandidates candidates, boolean exactRerank, float[] rowValues) {
+        int[] others = candidates.candidatesOf(row);
+        TopSelector selector = new TopSelector(Math.min(k, others.length));
+        if (!exactRerank) {
+            for (int other : others) {
+                selector.offer(other, candidates.estimateSimilarity(row, other));
+            }
+            return selector.toNeighbors();
+        }
+
+        for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+            rowValues[matrix.columnIndexAt(p)] = matrix.valueAt(p);
+        }
+        float rowNorm = matrix.rowNorm(row);
+        for (int other : others) {
+            float dotProduct = 0f;
+            for (int q = matrix.rowStart(other); q < matrix.rowEnd(other); q++) {
+                dotProduct += rowValues[matrix.columnIndexAt(q)] * matrix.valueAt(q);
+            }
+            if (dotProduct > 0f) {
+                selector.offer(other, dotProduct / (rowNorm * matrix.rowNorm(other)));
+            }
+        }
+        for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+            rowValues[matrix.columnIndexAt(p)] = 0f;
+        }
+        return selector.toNeighbors();
+    }
+
+    // Giữ k phần tử có độ tương đồng cao nhất trong mảng đã sắp xếp giảm dần
+    private static class TopSelector {
+        private final int[] users;
+        private final float[] similarities;
+        private int size;
+
+        TopSelector(int k) {
+            this.users = new int[k];
+            this.similarities = new float[k];
+        }
+
+        void offer(int user, float similarity) {
+            if (users.length == 0) return;
+            if (size == users.length && similarity <= similarities[size - 1]) return;
+
+            int position = size < users.length ? size++ : size - 1;
+            while (position > 0 && similarities[position - 1] < similarity) {
+                users[position] = users[position - 1];
+                similarities[position] = similarities[position - 1];
+                position--;
+            }
+            users[position] = user;
+            similarities[position] = similarity;
+        }
+
+        Neighbors toNeighbors() {
+            return size == users.length
+                    ? new Neighbors(users, similarities)
+                    : new Neighbors(Arrays.copyOf(users, size), Arrays.copyOf(similarities, size));
+        }
+    }
+
+    private class RecommendTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int neighborCount;
+        private final int topN;
+        private final NeighborCandidates candidates;
+        private final boolean exactRerank;
+        private final List<Map<ObjectId, Double>> results;
+
+        RecommendTask(int from, int to, int neighborCount, int topN, NeighborCandidates candidates, boolean exactRerank,
+                      List<Map<ObjectId, Double>> results) {
+            this.from = from;
+            this.to = to;
+            this.neighborCount = neighborCount;
+            this.topN = topN;
+            this.candidates = candidates;
+            this.exactRerank = exactRerank;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                boolean[] excluded = new boolean[matrix.getBookCount()];
+                if (candidates != null) {
+                    float[] rowValues = new float[matrix.getBookCount()];
+                    for (int row = from; row < to; row++) {
+                        results.set(row, recommend(row, topNeighbors(row, neighborCount, candidates, exactRerank, rowValues), topN, excluded));
+                    }
+                    return;
+                }
+                float[] dotProducts = new float[matrix.getUserCount()];
+                int[] touched = new int[matrix.getUserCount()];
+                for (int row = from; row < to; row++) {
+                    results.set(row, recommend(row, topNeighbors(row, neighborCount, dotProducts, touched), topN, excluded));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RecommendTask(from, middle, neighborCount, topN, candidates, exactRerank, results),
+                    new RecommendTask(middle, to, neighborCount, topN, candidates, exactRerank, results));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Vector nhân tố ẩn của user và sách sau khi huấn luyện ALS, lưu liền trong mảng float (hàng i bắt đầu tại i * factors)
+public class ImplicitAlsModel {
+    private static final int ROWS_PER_TASK = 64;
+
+    private final int factors;
+    private final String[] userIds;
+    private final ObjectId[] bookIds;
+    private final Map<String, Integer> userIndex;
+    private final Map<ObjectId, Integer> bookIndex;
+    private final float[] userFactors;
+    private final float[] bookFactors;
+    private final double[] bookGram;
+
+    public ImplicitAlsModel(int factors, String[] userIds, ObjectId[] bookIds, float[] userFactors, float[] bookFactors) {
+        this.factors = factors;
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.userFactors = userFactors;
+        this.bookFactors = bookFactors;
+        this.userIndex = new HashMap<>(userIds.length * 2);
+        for (int i = 0; i < userIds.length; i++) {
+            userIndex.put(userIds[i], i);
+        }
+        this.bookIndex = new HashMap<>(bookIds.length * 2);
+        for (int i = 0; i < bookIds.length; i++) {
+            bookIndex.put(bookIds[i], i);
+        }
+        this.bookGram = gram(bookFactors, bookIds.length, factors);
+    }
+
+    // Ma trận Gram YtY (factors x factors) của các vector nhân tố
+    static double[] gram(float[] vectors, int count, int factors) {
+        double[] gram = new double[factors * factors];
+        for (int i = 0; i < count; i++) {
+            int base = i * factors;
+            for (int a = 0; a < factors; a++) {
+                double value = vectors[base + a];
+                for (int b = a; b < factors; b++) {
+                    gram[a * factors + b] += value * vectors[base + b];
+                }
+            }
+        }
+        for (int a = 0; a < factors; a++) {
+            for (int b = 0; b < a; b++) {
+                gram[a * factors + b] = gram[b * factors + a];
+            }
+        }
+        return gram;
+    }
+
+    public int getFactors() {
+        return factors;
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    public int getBookCount() {
+        return bookIds.length;
+    }
+
+    public String getUserId(int row) {
+        return userIds[row];
+    }
+
+    public ObjectId getBookId(int column) {
+        return bookIds[column];
+    }
+
+    // Trả về -1 nếu sách không có trong mô hình
+    public int indexOfBook(ObjectId bookId) {
+        Integer column = bookIndex.get(bookId);
+        return column != null ? column : -1;
+    }
+
+    public int indexOfUser(String userId) {
+        Integer row = userIndex.get(userId);
+        return row != null ? row : -1;
+    }
+
+    public float[] userVector(int row) {
+        return Arrays.copyOfRange(userFactors, row * factors, (row + 1) * factors);
+    }
+
+    public float[] bookVector(int column) {
+        return Arrays.copyOfRange(bookFactors, column * factors, (column + 1) * factors);
+    }
+
+    float[] getBookFactors() {
+        return bookFactors;
+    }
+
+    double[] getBookGram() {
+        return bookGram;
+    }
+
+    // Duyệt tích vô hướng với toàn bộ sách, giữ top-N trong mảng đã sắp xếp, bỏ qua các sách user đã tương tác
+    public Map<ObjectId, Double> recommend(float[] userVector, Set<ObjectId> excludedBooks, int topN) {
+        boolean[] excluded = new boolean[bookIds.length];
+        for (ObjectId bookId : excludedBooks) {
+            int column = indexOfBook(bookId);
+            if (column >= 0) excluded[column] = true;
+        }
+        return scan(userVector, 0, excluded, topN);
+    }
+
+    // interactions phải là ma trận đã dùng để huấn luyện mô hình (cùng thứ tự user và sách)
+    public List<Map<ObjectId, Double>> recommendForAll(SparseInteractionMatrix interactions, int topN, ForkJoinPool pool) {
+        List<Map<ObjectId, Double>> results = new ArrayList<>(Collections.nCopies(userIds.length, null));
+        pool.invoke(new RecommendTask(interactions, 0, userIds.length, topN, results));
+        return results;
+    }
+
+    private Map<ObjectId, Double> scan(float[] vector, int offset, boolean[] excluded, int topN) {
+        int[] topBooks = new int[Math.min(topN, bookIds.length)];
+        float[] topScores = new float[topBooks.length];
+        int size = 0;
+        for (int column = 0; column < bookIds.length && topBooks.length > 0; column++) {
+            if (excluded[column]) continue;
+            float score = 0f;
+            int base = column * factors;
+            for (int f = 0; f < factors; f++) {
+                score += vector[offset + f] * bookFactors[base + f];
+            }
+            if (size == topBooks.length && score <= topScores[size - 1]) continue;
+
+            int position = size < topBooks.length ? size++ : size - 1;
+            while (position > 0 && topScores[position - 1] < score) {
+                topBooks[position] = topBooks[position - 1];
+                topScores[position] = topScores[position - 1];
+                position--;
+            }
+            topBooks[position] = column;
+            topScores[position] = score;
+        }
+
+        Map<ObjectId, Double> recommendations = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            recommendations.put(bookIds[topBooks[i]], (double) topScores[i]);
+        }
+        return recommendations;
+    }
+
+    private class RecommendTask extends RecursiveAction {
+        private final SparseInteractionMatrix interactions;
+        private final int from;
+        private final int to;
+        private final int topN;
+        private final List<Map<ObjectId, Double>> results;
+
+        RecommendTask(SparseInteractionMatrix interactions, int from, int to, int topN, List<Map<ObjectId, Double>> results) {
+            this.interactions = interactions;
+            this.from = from;
+            this.to = to;
+            this.topN = topN;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                boolean[] excluded = new boolean[bookIds.length];
+                for (int row = from; row < to; row++) {
+                    for (int k = interactions.rowStart(row); k < interactions.rowEnd(row); k++) {
+                        excluded[interactions.columnIndexAt(k)] = true;
+                    }
+                    results.set(row, scan(userFactors, row * factors, excluded, topN));
+                    for (int k = interactions.rowStart(row); k < interactions.rowEnd(row); k++) {
+                        excluded[interactions.columnIndexAt(k)] = false;
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RecommendTask(interactions, from, middle, topN, results),
+                    new RecommendTask(interactions, middle, to, topN, results));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// ALS cho phản hồi ngầm (Hu, Koren, Volinsky 2008): độ tin cậy c = 1 + alpha * r, xen kẽ giải
+// bình phương tối thiểu cho từng user rồi từng sách, mỗi nửa vòng lặp chia hàng cho ForkJoinPool
+public class ImplicitAlsTrainer {
+    private static final int ROWS_PER_TASK = 64;
+    private static final long SEED = 42L;
+
+    private final int factors;
+    private final int iterations;
+    private final double regularization;
+    private final double alpha;
+
+    public ImplicitAlsTrainer(int factors, int iterations, double regularization, double alpha) {
+        this.factors = factors;
+        this.iterations = iterations;
+        this.regularization = regularization;
+        this.alpha = alpha;
+    }
+
+    public ImplicitAlsModel train(SparseInteractionMatrix matrix, ForkJoinPool pool) {
+        int userCount = matrix.getUserCount();
+        int bookCount = matrix.getBookCount();
+        float[] userFactors = new float[userCount * factors];
+        float[] bookFactors = new float[bookCount * factors];
+        Random random = new Random(SEED);
+        float scale = (float) (0.1 / Math.sqrt(factors));
+        for (int i = 0; i < bookFactors.length; i++) {
+            bookFactors[i] = (float) random.nextGaussian() * scale;
+        }
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double[] bookGram = ImplicitAlsModel.gram(bookFactors, bookCount, factors);
+            pool.invoke(new SolveTask(matrix, false, bookGram, bookFactors, userFactors, 0, userCount));
+            double[] userGram = ImplicitAlsModel.gram(userFactors, userCount, factors);
+            pool.invoke(new SolveTask(matrix, true, userGram, userFactors, bookFactors, 0, bookCount));
+        }
+
+        String[] userIds = new String[userCount];
+        for (int row = 0; row < userCount; row++) {
+            userIds[row] = matrix.getUserId(row);
+        }
+        ObjectId[] bookIds = new ObjectId[bookCount];
+        for (int column = 0; column < bookCount; column++) {
+            bookIds[column] = matrix.getBookId(column);
+        }
+        return new ImplicitAlsModel(factors, userIds, bookIds, userFactors, bookFactors);
+    }
+
+    // Tính vector cho một user mới/đã thay đổi khi giữ nguyên vector sách, không cần huấn luyện lại
+    public float[] foldInUser(ImplicitAlsModel model, Map<ObjectId, Double> interactions) {
+        int[] columns = new int[interactions.size()];
+        float[] values = new float[interactions.size()];
+        int size = 0;
+        for (Map.Entry<ObjectId, Double> entry : interactions.entrySet()) {
+            int column = model.indexOfBook(entry.getKey());
+            if (column < 0) continue;
+            columns[size] = column;
+            values[size] = entry.getValue().floatValue();
+            size++;
+        }
+
+        float[] vector = new float[model.getFactors()];
+        new Solver(model.getFactors()).solve(model.getBookGram(), model.getBookFactors(), columns, values, 0, size, vector, 0);
+        return vector;
+    }
+
+    private class SolveTask extends RecursiveAction {
+        private final SparseInteractionMatrix matrix;
+        private final boolean byColumn;
+        private final double[] gram;
+        private final float[] fixed;
+        private final float[] target;
+        private final int from;
+        private final int to;
+
+        SolveTask(SparseInteractionMatrix matrix, boolean byColumn, double[] gram, float[] fixed, float[] target, int from, int to) {
+            this.matrix = matrix;
+            this.byColumn = byColumn;
+            this.gram = gram;
+            this.fixed = fixed;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                Solver solver = new Solver(factors);
+                int[] indices = new int[0];
+                float[] values = new float[0];
+                for (int i = from; i < to; i++) {
+                    int start = byColumn ? matrix.columnStart(i) : matrix.rowStart(i);
+                    int end = byColumn ? matrix.columnEnd(i) : matrix.rowEnd(i);
+                    int length = end - start;
+                    if (indices.length < length) {
+                        indices = new int[length];
+                        values = new float[length];
+                    }
+                    for (int k = 0; k < length; k++) {
+                        indices[k] = byColumn ? matrix.rowIndexAt(start + k) : matrix.columnIndexAt(start + k);
+                        values[k] = byColumn ? matrix.columnValueAt(start + k) : matrix.valueAt(start + k);
+                    }
+                    solver.solve(gram, fixed, indices, values, 0, length, target, i * factors);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveTask(matrix, byColumn, gram, fixed, target, from, middle),
+                    new SolveTask(matrix, byColumn, gram, fixed, target, middle, to));
+        }
+    }
+
+    // Giải (YtY + Yt(C - I)Y + lambda*I) x = Yt C p bằng phân rã Cholesky, tái sử dụng bộ đệm giữa các hàng
+    private class Solver {
+        private final int size;
+        private final double[] a;
+        private final double[] b;
+
+        Solver(int size) {
+            this.size = size;
+            this.a = new double[size * size];
+            this.b = new double[size];
+        }
+
+        void solve(double[] gram, float[] fixed, int[] indices, float[] values, int from, int to, float[] target, int offset) {
+            System.arraycopy(gram, 0, a, 0, a.length);
+            for (int d = 0; d < size; d++) {
+                a[d * size + d] += regularization;
+                b[d] = 0.0;
+            }
+            for (int k = from; k < to; k++) {
+                int base = indices[k] * size;
+                double confidence = 1.0 + alpha * values[k];
+                for (int p = 0; p < size; p++) {
+                    double weighted = (confidence - 1.0) * fixed[base + p];
+                    for (int q = p; q < size; q++) {
+                        a[p * size + q] += weighted * fixed[base + q];
+                    }
+                    b[p] += confidence * fixed[base + p];
+                }
+            }
+
+            // Phân rã Cholesky A = L * Lt, L lưu ở tam giác dưới (dùng nửa trên đã cộng dồn ở trên)
+            for (int p = 0; p < size; p++) {
+                for (int q = 0; q <= p; q++) {
+                    double sum = a[q * size + p];
+                    for (int r = 0; r < q; r++) {
+                        sum -= a[p * size + r] * a[q * size + r];
+                    }
+                    if (p == q) {
+                        a[p * size + p] = Math.sqrt(Math.max(sum, 1e-12));
+                    } else {
+                        a[p * size + q] = sum / a[q * size + q];
+                    }
+                }
+            }
+            for (int p = 0; p < size; p++) {
+                double sum = b[p];
+                for (int r = 0; r < p; r++) {
+                    sum -= a[p * size + r] * b[r];
+                }
+                b[p] = sum / a[p * size + p];
+            }
+            for (int p = size - 1; p >= 0; p--) {
+                double sum = b[p];
+                for (int r = p + 1; r < size; r++) {
+                    sum -= a[r * size + p] * b[r];
+                }
+                b[p] = sum / a[p * size + p];
+                target[offset + p] = (float) b[p];
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Chữ ký MinHash trên tập sách của từng user, chia thành các band cho LSH: hai user có chung
+// ít nhất một band sẽ rơi vào cùng bucket, nên tìm ứng viên không cần duyệt toàn bộ user
+public class MinHashLshIndex {
+    private static final long SEED = 7L;
+
+    private final int bands;
+    private final int rowsPerBand;
+    private final long[] hashSeeds;
+    private final Map<String, int[]> signatures = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> buckets = new ConcurrentHashMap<>();
+
+    public MinHashLshIndex(int bands, int rowsPerBand) {
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+        this.hashSeeds = new long[bands * rowsPerBand];
+        Random random = new Random(SEED);
+        for (int i = 0; i < hashSeeds.length; i++) {
+            hashSeeds[i] = random.nextLong() | 1L;
+        }
+    }
+
+    public int size() {
+        return signatures.size();
+    }
+
+    public synchronized void rebuild(Map<String, ? extends Map<ObjectId, ?>> interactions) {
+        signatures.clear();
+        buckets.clear();
+        interactions.forEach((userId, books) -> put(userId, books.keySet()));
+    }
+
+    public synchronized void put(String userId, Collection<ObjectId> books) {
+        remove(userId);
+        if (books.isEmpty()) {
+            return;
+        }
+        int[] signature = signature(books);
+        signatures.put(userId, signature);
+        for (int band = 0; band < bands; band++) {
+            buckets.computeIfAbsent(bandKey(signature, band), key -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+    }
+
+    public synchronized void remove(String userId) {
+        int[] signature = signatures.remove(userId);
+        if (signature == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(signature, band);
+            Set<String> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(userId);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    public Set<String> candidates(String userId) {
+        int[] signature = signatures.get(userId);
+        if (signature == null) {
+            return Collections.emptySet();
+        }
+        Set<String> candidates = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            Set<String> bucket = buckets.get(bandKey(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        candidates.remove(userId);
+        return candidates;
+    }
+
+    // Tỉ lệ giá trị trùng nhau của hai chữ ký xấp xỉ độ tương đồng Jaccard của hai tập sách
+    public float estimateSimilarity(String userId, String otherId) {
+        int[] signature = signatures.get(userId);
+        int[] other = signatures.get(otherId);
+        if (signature == null || other == null) {
+            return 0f;
+        }
+        int matches = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] == other[i]) matches++;
+        }
+        return (float) matches / signature.length;
+    }
+
+    public NeighborCandidates forMatrix(SparseInteractionMatrix matrix) {
+        return new NeighborCandidates() {
+            @Override
+            public int[] candidatesOf(int row) {
+                return candidates(matrix.getUserId(row)).stream()
+                        .mapToInt(matrix::indexOfUser)
+                        .filter(other -> other >= 0)
+                        .toArray();
+            }
+
+            @Override
+            public float estimateSimilarity(int row, int other) {
+                return MinHashLshIndex.this.estimateSimilarity(matrix.getUserId(row), matrix.getUserId(other));
+            }
+        };
+    }
+
+    private int[] signature(Collection<ObjectId> books) {
+        int[] signature = new int[hashSeeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (ObjectId book : books) {
+            long base = book.hashCode();
+            for (int i = 0; i < hashSeeds.length; i++) {
+                int hash = (int) (mix(base * hashSeeds[i] + i) >>> 33);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int r = 0; r < rowsPerBand; r++) {
+            key = key * 31 + signature[band * rowsPerBand + r];
+        }
+        return mix(key);
+    }
+
+    // Bước trộn bit của SplitMix64
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.bookgarden.recommendation;
+
+// Nguồn ứng viên láng giềng gần đúng cho một hàng của ma trận tương tác
+public interface NeighborCandidates {
+    int[] candidatesOf(int row);
+
+    // Độ tương đồng ước lượng, dùng khi không xếp hạng lại bằng cosine chính xác
+    float estimateSimilarity(int row, int other);
+}
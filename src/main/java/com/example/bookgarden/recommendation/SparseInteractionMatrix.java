@@ -0,0 +1,176 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ma trận tương tác user x book lưu dạng CSR (theo hàng) kèm bản CSC (theo cột),
+// bộ nhớ tỉ lệ với số tương tác thay vì users x books
+public class SparseInteractionMatrix {
+    private final String[] userIds;
+    private final ObjectId[] bookIds;
+    private final Map<String, Integer> userIndex;
+    private final Map<ObjectId, Integer> bookIndex;
+
+    private final int[] rowPointers;
+    private final int[] columnIndices;
+    private final float[] values;
+
+    private final int[] columnPointers;
+    private final int[] rowIndices;
+    private final float[] columnValues;
+
+    private final float[] rowNorms;
+
+    private SparseInteractionMatrix(String[] userIds, ObjectId[] bookIds, Map<String, Integer> userIndex,
+                                    Map<ObjectId, Integer> bookIndex, int[] rowPointers, int[] columnIndices, float[] values) {
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.userIndex = userIndex;
+        this.bookIndex = bookIndex;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+
+        int userCount = userIds.length;
+        int bookCount = bookIds.length;
+        int nonZeroCount = values.length;
+
+        this.columnPointers = new int[bookCount + 1];
+        for (int i = 0; i < nonZeroCount; i++) {
+            columnPointers[columnIndices[i] + 1]++;
+        }
+        for (int column = 0; column < bookCount; column++) {
+            columnPointers[column + 1] += columnPointers[column];
+        }
+        this.rowIndices = new int[nonZeroCount];
+        this.columnValues = new float[nonZeroCount];
+        int[] nextPosition = new int[bookCount];
+        System.arraycopy(columnPointers, 0, nextPosition, 0, bookCount);
+
+        this.rowNorms = new float[userCount];
+        for (int row = 0; row < userCount; row++) {
+            double squaredSum = 0.0;
+            for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+                int position = nextPosition[columnIndices[k]]++;
+                rowIndices[position] = row;
+                columnValues[position] = values[k];
+                squaredSum += (double) values[k] * values[k];
+            }
+            rowNorms[row] = (float) Math.sqrt(squaredSum);
+        }
+    }
+
+    public static SparseInteractionMatrix from(Map<String, Map<ObjectId, Double>> interactions) {
+        int userCount = interactions.size();
+        int nonZeroCount = 0;
+        for (Map<ObjectId, Double> row : interactions.values()) {
+            nonZeroCount += row.size();
+        }
+
+        String[] userIds = new String[userCount];
+        Map<String, Integer> userIndex = new HashMap<>(userCount * 2);
+        Map<ObjectId, Integer> bookIndex = new HashMap<>();
+        List<ObjectId> bookIdList = new ArrayList<>();
+        int[] rowPointers = new int[userCount + 1];
+        int[] columnIndices = new int[nonZeroCount];
+        float[] values = new float[nonZeroCount];
+
+        int row = 0;
+        int k = 0;
+        for (Map.Entry<String, Map<ObjectId, Double>> userEntry : interactions.entrySet()) {
+            userIds[row] = userEntry.getKey();
+            userIndex.put(userEntry.getKey(), row);
+            for (Map.Entry<ObjectId, Double> bookEntry : userEntry.getValue().entrySet()) {
+                Integer column = bookIndex.get(bookEntry.getKey());
+                if (column == null) {
+                    column = bookIdList.size();
+                    bookIndex.put(bookEntry.getKey(), column);
+                    bookIdList.add(bookEntry.getKey());
+                }
+                columnIndices[k] = column;
+                values[k] = bookEntry.getValue().floatValue();
+                k++;
+            }
+            rowPointers[++row] = k;
+        }
+        return new SparseInteractionMatrix(userIds, bookIdList.toArray(new ObjectId[0]), userIndex, bookIndex,
+                rowPointers, columnIndices, values);
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    public int getBookCount() {
+        return bookIds.length;
+    }
+
+    public int getNonZeroCount() {
+        return values.length;
+    }
+
+    public String getUserId(int row) {
+        return userIds[row];
+    }
+
+    public ObjectId getBookId(int column) {
+        return bookIds[column];
+    }
+
+    // Trả về -1 nếu user chưa có tương tác nào
+    public int indexOfUser(String userId) {
+        Integer row = userIndex.get(userId);
+        return row != null ? row : -1;
+    }
+
+    public int indexOfBook(ObjectId bookId) {
+        Integer column = bookIndex.get(bookId);
+        return column != null ? column : -1;
+    }
+
+    public int rowStart(int row) {
+        return rowPointers[row];
+    }
+
+    public int rowEnd(int row) {
+        return rowPointers[row + 1];
+    }
+
+    public int columnStart(int column) {
+        return columnPointers[column];
+    }
+
+    public int columnEnd(int column) {
+        return columnPointers[column + 1];
+    }
+
+    public int columnIndexAt(int k) {
+        return columnIndices[k];
+    }
+
+    public float valueAt(int k) {
+        return values[k];
+    }
+
+    public int rowIndexAt(int k) {
+        return rowIndices[k];
+    }
+
+    public float columnValueAt(int k) {
+        return columnValues[k];
+    }
+
+    public float rowNorm(int row) {
+        return rowNorms[row];
+    }
+
+    public long estimateMemoryBytes() {
+        long nonZeroBytes = (long) values.length * (4 + 4) * 2;
+        long pointerBytes = (long) (rowPointers.length + columnPointers.length) * 4;
+        return nonZeroBytes + pointerBytes + (long) rowNorms.length * 4;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.bookgarden.repository;
+
+import com.example.bookgarden.entity.BookCoPurchase;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BookCoPurchaseRepository extends MongoRepository<BookCoPurchase, ObjectId> {
+}
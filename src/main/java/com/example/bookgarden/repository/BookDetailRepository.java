@@ -12,6 +12,7 @@ public interface BookDetailRepository extends MongoRepository<BookDetail, Object
     @Cacheable("bookDetails")
     Optional<BookDetail> findByBook(ObjectId bookId);
     Optional<BookDetail> findByIsbn(String isbn);
+    List<BookDetail> findByBookIn(List<ObjectId> bookIds);
 }
 
 
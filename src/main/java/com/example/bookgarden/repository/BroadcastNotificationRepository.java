@@ -0,0 +1,13 @@
+package com.example.bookgarden.repository;
+
+import com.example.bookgarden.entity.BroadcastNotification;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface BroadcastNotificationRepository extends MongoRepository<BroadcastNotification, ObjectId> {
+    List<BroadcastNotification> findByCreatedAtGreaterThanEqualOrderByCreatedAtDesc(Date createdAt);
+    List<BroadcastNotification> findByCreatedByOrderByCreatedAtDesc(String createdBy);
+}
@@ -11,5 +11,6 @@ import java.util.Optional;
 public interface CartRepository extends MongoRepository<Cart, ObjectId> {
     Optional<Cart> findById (ObjectId objectId);
     Optional<Cart> findByUser(ObjectId userId);
+    boolean existsByUser(ObjectId userId);
 
 }
@@ -9,4 +9,5 @@ import java.util.Optional;
 
 public interface DiscountRepository extends MongoRepository<Discount, ObjectId> {
     Optional<Discount> findByBookId(ObjectId objectId);
+    List<Discount> findByBookIdIn(List<ObjectId> bookIds);
 }
@@ -0,0 +1,12 @@
+package com.example.bookgarden.repository;
+
+import com.example.bookgarden.entity.FactorVector;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface FactorVectorRepository extends MongoRepository<FactorVector, String> {
+    List<FactorVector> findByType(String type);
+}
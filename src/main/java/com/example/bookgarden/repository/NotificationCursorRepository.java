@@ -0,0 +1,7 @@
+package com.example.bookgarden.repository;
+
+import com.example.bookgarden.entity.NotificationCursor;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface NotificationCursorRepository extends MongoRepository<NotificationCursor, String> {
+}
@@ -12,6 +12,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,11 +25,25 @@ public interface OrderRepository extends MongoRepository<Order, ObjectId> {
     List<Order> findTop10ByOrderByOrderDateDesc();
     List<Order> findByPaymentMethodAndPaymentStatus(String paymentMethod, String paymentStatus);
     @Aggregation(pipeline = {
-            "{ $group: { _id: '$user', orderCount: { $sum: 1 } } }",
-            "{ $sort: { orderCount: -1 } }",
-            "{ $limit: 10 }"
+            "{ $match: { orderDate: { $gte: ?0 }, status: { $ne: 'CANCELLED' } } }",
+            "{ $group: { _id: '$user', orderCount: { $sum: 1 }, totalSpent: { $sum: '$totalAmount' } } }",
+            "{ $sort: { orderCount: -1, totalSpent: -1 } }",
+            "{ $limit: ?1 }",
+            "{ $lookup: { from: 'users', localField: '_id', foreignField: '_id', pipeline: [ { $project: { fullName: 1, email: 1, avatar: 1 } } ], as: 'user' } }",
+            "{ $unwind: { path: '$user', preserveNullAndEmptyArrays: true } }",
+            "{ $project: { orderCount: 1, totalSpent: 1, fullName: '$user.fullName', email: '$user.email', avatar: '$user.avatar' } }"
     })
-    List<CustomerOrderCount> findTopCustomers();
+    List<CustomerOrderCount> findTopCustomers(Date since, int limit);
+    @Aggregation(pipeline = {
+            "{ $match: { orderDate: { $gte: ?0 }, status: { $ne: 'CANCELLED' } } }",
+            "{ $group: { _id: '$user', orderCount: { $sum: 1 }, totalSpent: { $sum: '$totalAmount' } } }",
+            "{ $sort: { totalSpent: -1, orderCount: -1 } }",
+            "{ $limit: ?1 }",
+            "{ $lookup: { from: 'users', localField: '_id', foreignField: '_id', pipeline: [ { $project: { fullName: 1, email: 1, avatar: 1 } } ], as: 'user' } }",
+            "{ $unwind: { path: '$user', preserveNullAndEmptyArrays: true } }",
+            "{ $project: { orderCount: 1, totalSpent: 1, fullName: '$user.fullName', email: '$user.email', avatar: '$user.avatar' } }"
+    })
+    List<CustomerOrderCount> findTopCustomersByRevenue(Date since, int limit);
     Page<Order> findAllByUser(ObjectId userId, Pageable pageable);
     Page<Order> findAll(Pageable pageable);
 
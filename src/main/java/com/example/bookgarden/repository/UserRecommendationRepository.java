@@ -0,0 +1,9 @@
+package com.example.bookgarden.repository;
+
+import com.example.bookgarden.entity.UserRecommendation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserRecommendationRepository extends MongoRepository<UserRecommendation, String> {
+}
@@ -12,4 +12,5 @@ import java.util.Optional;
 public interface WishListRepository extends MongoRepository<WishList, ObjectId> {
     Optional<WishList> findById (ObjectId objectId);
     Optional<WishList> findByUser(ObjectId objectId);
+    boolean existsByUser(ObjectId objectId);
 }
@@ -22,6 +22,7 @@ private final Long JWT_REFRESH_EXPIRATION = 604800000L;
 
 private final SecretKey secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
 private final String issuer = "Lak";
+private static final String STREAM_SCOPE = "notification-stream";
 
 private Key getSigningKey() {
     return secretKey;
@@ -56,6 +57,35 @@ public String generateRefreshToken(UserDetail userDetail) {
 
 }
 
+// Token ngắn hạn chỉ dùng để mở /notifications/stream qua query param (EventSource không gửi được header Authorization).
+// Không có claim userId nên không dùng thay access token được.
+public String generateStreamToken(String userId, long expirationMillis) {
+    Date now = new Date();
+    Date expiryDate = new Date(now.getTime() + expirationMillis);
+
+    return Jwts.builder()
+            .setSubject(userId)
+            .claim("scope", STREAM_SCOPE)
+            .setIssuer(issuer)
+            .setIssuedAt(now)
+            .setExpiration(expiryDate)
+            .signWith(SignatureAlgorithm.HS512, getSigningKey())
+            .compact();
+}
+
+// Trả về null nếu token sai, hết hạn hoặc không phải stream token
+public String getUserIdFromStreamToken(String token) {
+    try {
+        Claims claims = Jwts.parser()
+                .setSigningKey(getSigningKey())
+                .parseClaimsJws(token)
+                .getBody();
+        return STREAM_SCOPE.equals(claims.get("scope")) ? claims.getSubject() : null;
+    } catch (JwtException | IllegalArgumentException ex) {
+        log.debug("Rejected stream token: {}", ex.getMessage());
+        return null;
+    }
+}
 
 public String getUserIdFromJwt(String token) {
     Claims claims = Jwts.parser()
@@ -0,0 +1,45 @@
+package com.example.bookgarden.security;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+
+// Gắn userId từ JWT (header Authorization của frame CONNECT) vào phiên STOMP để gửi thông báo riêng qua /user/queue.
+// Client không có token hợp lệ vẫn kết nối được nhưng chỉ nhận các topic chung.
+@Log4j2
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+        String bearerToken = accessor.getFirstNativeHeader("Authorization");
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            String token = bearerToken.substring(7);
+            try {
+                if (jwtTokenProvider.validateToken(token)) {
+                    String userId = jwtTokenProvider.getUserIdFromJwt(token);
+                    accessor.setUser(new UsernamePasswordAuthenticationToken(userId, null, Collections.emptyList()));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Rejected STOMP token: {}", e.getMessage());
+            }
+        }
+        return message;
+    }
+}
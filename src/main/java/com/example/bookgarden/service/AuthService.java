@@ -11,7 +11,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -50,7 +49,7 @@ public class AuthService {
     @Autowired
     private NotificationService notificationService;
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private NotificationDispatcher notificationDispatcher;
     @Value("${google.client.id}")
     private String clientId;
     @Value("${google.client.secret}")
@@ -82,7 +81,7 @@ public class AuthService {
         otpService.sendRegisterOtp(registerDTO.getEmail());
         String notificationMessage = "Chào mừng bạn đến với Book Garden! Cảm ơn bạn đã đăng ký, chúng tôi hy vọng bạn sẽ có những trải nghiệm tuyệt vời!";
         Notification notification = notificationService.createNotification(newUser.getId().toString(), "Chào mừng", notificationMessage, "/", "");
-        messagingTemplate.convertAndSend("/topic/notifications/" + newUser.getId().toString(), notification);
+        notificationDispatcher.sendToUser(newUser.getId().toString(), notification);
         return GenericResponse.builder()
                 .success(true)
                 .message("Đăng ký thành công!")
@@ -17,7 +17,6 @@ import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
@@ -25,6 +24,7 @@ import org.springframework.web.multipart.MultipartHttpServletRequest;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -55,7 +55,7 @@ public class BookService {
     @Autowired
     private NotificationService notificationService;
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private SearchQueryResolver searchQueryResolver;
     @Value("${client.host}")
     private String clientHost;
 
@@ -265,14 +265,11 @@ public class BookService {
             Book newBook = bookRepository.save(book);
             bookDetail.setBook(book.getId());
             bookDetailRepository.save(bookDetail);
+            searchQueryResolver.onTitleChanged();
             BookDetailDTO bookDetailDTO = convertToBookDetailDTO(newBook);
 
             String notificationMessage = "Một quyển sách mới đã được thêm vào: " + book.getTitle();
-            List<User> users = userRepository.findAllCustomerUsers();
-            for (User user : users) {
-                Notification notification = notificationService.createNotification(user.getId().toString(), "Sách mới", notificationMessage, clientHost + "/book-detail/" + newBook.getId().toString(), "");
-                messagingTemplate.convertAndSend("/topic/notifications/" + user.getId().toString(), notification);
-            }
+            notificationService.notifyAllCustomers("Sách mới", notificationMessage, clientHost + "/book-detail/" + newBook.getId().toString(), "");
 
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
@@ -333,6 +330,7 @@ public class BookService {
             }
 
             BookDetail bookDetail = optionalBookDetail.get();
+            String previousTitle = book.getTitle();
             ModelMapper modelMapper = new ModelMapper();
             modelMapper.map(updateBookRequestDTO, book);
             modelMapper.map(updateBookRequestDTO, bookDetail);
@@ -367,6 +365,9 @@ public class BookService {
 
             bookRepository.save(book);
             bookDetailRepository.save(bookDetail);
+            if (!Objects.equals(previousTitle, book.getTitle())) {
+                searchQueryResolver.onTitleChanged();
+            }
             BookDetailDTO bookDetailDTO = convertToBookDetailDTO(book);
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
@@ -554,6 +555,64 @@ public class BookService {
         return bookDTO;
     }
 
+    // Chuyển nhiều sách cùng lúc với số truy vấn cố định: chi tiết, danh mục, tác giả và giảm giá mỗi loại một truy vấn
+    public List<BookDTO> convertToBookDTOs(List<Book> books) {
+        if (books == null || books.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ObjectId> bookIds = books.stream().map(Book::getId).collect(Collectors.toList());
+        Set<ObjectId> categoryIds = new HashSet<>();
+        Set<ObjectId> authorIds = new HashSet<>();
+        for (Book book : books) {
+            if (book.getCategories() != null) categoryIds.addAll(book.getCategories());
+            if (book.getAuthors() != null) authorIds.addAll(book.getAuthors());
+        }
+
+        Map<ObjectId, BookDetail> bookDetails = bookDetailRepository.findByBookIn(bookIds).stream()
+                .collect(Collectors.toMap(BookDetail::getBook, Function.identity(), (first, second) -> first));
+        Map<ObjectId, Discount> discounts = discountRepository.findByBookIdIn(bookIds).stream()
+                .collect(Collectors.toMap(Discount::getBookId, Function.identity(), (first, second) -> first));
+        Map<ObjectId, Category> categories = categoryIds.isEmpty() ? Collections.emptyMap()
+                : categoryRepository.findAllByIdIn(new ArrayList<>(categoryIds)).stream()
+                .collect(Collectors.toMap(Category::getId, Function.identity()));
+        Map<ObjectId, Author> authors = authorIds.isEmpty() ? Collections.emptyMap()
+                : authorRepository.findAllByIdIn(new ArrayList<>(authorIds)).stream()
+                .collect(Collectors.toMap(Author::getId, Function.identity()));
+
+        ModelMapper modelMapper = new ModelMapper();
+        return books.stream().map(book -> {
+            BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
+            bookDTO.set_id(book.getId().toString());
+
+            BookDetail bookDetail = bookDetails.get(book.getId());
+            if (bookDetail != null) {
+                bookDTO.setDescription(bookDetail.getDescription());
+                bookDTO.setIsbn(bookDetail.getIsbn());
+                bookDTO.setImage(bookDetail.getImage());
+                bookDTO.setPublisher(bookDetail.getPublisher());
+            }
+
+            bookDTO.setCategories(book.getCategories() == null ? Collections.emptyList() : book.getCategories().stream()
+                    .map(categories::get)
+                    .filter(Objects::nonNull)
+                    .map(category -> modelMapper.map(category, CategoryDTO.class))
+                    .collect(Collectors.toList()));
+            bookDTO.setAuthors(book.getAuthors() == null ? Collections.emptyList() : book.getAuthors().stream()
+                    .map(authors::get)
+                    .filter(Objects::nonNull)
+                    .map(author -> modelMapper.map(author, AuthorDTO.class))
+                    .collect(Collectors.toList()));
+
+            Discount discount = discounts.get(book.getId());
+            if (discount != null) {
+                bookDTO.setDiscountPercent(applyDiscountPercentage(discount));
+                bookDTO.setStartDate(discount.getStartDate());
+                bookDTO.setEndDate(discount.getEndDate());
+            }
+            return bookDTO;
+        }).collect(Collectors.toList());
+    }
+
     @Cacheable("bookDetailDTOCache")
     public BookDetailDTO convertToBookDetailDTO(Book book) {
         if (book == null) {
@@ -0,0 +1,116 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Cart;
+import com.example.bookgarden.entity.CartLine;
+import com.example.bookgarden.entity.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Dọn dữ liệu giỏ hàng trùng rồi tạo unique index trên carts.user, để mọi thao tác giỏ hàng là một point lookup
+// theo (user, lines.book). Mỗi user chỉ còn một giỏ và mỗi sách chỉ còn một dòng trong giỏ (số lượng được cộng dồn).
+// Index được tạo sau khi dọn nên dữ liệu trùng cũ không làm ứng dụng lỗi khi khởi động.
+@Service
+public class CartCleanupService {
+    private static final Logger logger = LoggerFactory.getLogger(CartCleanupService.class);
+    private static final String USER_INDEX = "user_unique";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Order(2)
+    @EventListener(ApplicationReadyEvent.class)
+    public void cleanupAndIndex() {
+        int mergedCarts = mergeDuplicateCarts();
+        int mergedLines = mergeDuplicateLines();
+        if (mergedCarts > 0 || mergedLines > 0) {
+            logger.info("Cart cleanup merged {} duplicate carts and {} carts with duplicate book lines", mergedCarts, mergedLines);
+        }
+        mongoTemplate.indexOps(Cart.class).ensureIndex(new Index().on("user", Sort.Direction.ASC).unique().named(USER_INDEX));
+    }
+
+    // Giữ lại giỏ mà user.cart đang trỏ tới (hoặc giỏ tạo sớm nhất), gộp dòng của các giỏ còn lại vào đó rồi xóa chúng
+    private int mergeDuplicateCarts() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.sort(Sort.Direction.ASC, "_id"),
+                Aggregation.group("user").push("_id").as("cartIds").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1)));
+        int merged = 0;
+        for (Document group : mongoTemplate.aggregate(aggregation, "carts", Document.class)) {
+            ObjectId userId = group.getObjectId("_id");
+            List<ObjectId> cartIds = group.getList("cartIds", ObjectId.class);
+            if (userId == null || cartIds == null) continue;
+
+            User user = mongoTemplate.findById(userId.toHexString(), User.class);
+            ObjectId keptCartId = cartIds.get(0);
+            if (user != null && user.getCart() != null && ObjectId.isValid(user.getCart())
+                    && cartIds.contains(new ObjectId(user.getCart()))) {
+                keptCartId = new ObjectId(user.getCart());
+            }
+
+            List<Cart> carts = mongoTemplate.find(Query.query(Criteria.where("_id").in(cartIds)), Cart.class);
+            List<CartLine> lines = new ArrayList<>();
+            for (Cart cart : carts) {
+                if (cart.getLines() != null) lines.addAll(cart.getLines());
+            }
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(keptCartId)),
+                    new Update().set("lines", mergeLines(lines)), Cart.class);
+            List<ObjectId> removedCartIds = new ArrayList<>(cartIds);
+            removedCartIds.remove(keptCartId);
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(removedCartIds)), Cart.class);
+            if (user != null) {
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(user.getId())),
+                        new Update().set("cart", keptCartId.toHexString()), User.class);
+            }
+            merged += removedCartIds.size();
+        }
+        return merged;
+    }
+
+    // Gộp các dòng cùng một sách trong cùng một giỏ, giữ _id của dòng đầu tiên
+    private int mergeDuplicateLines() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.unwind("lines"),
+                Aggregation.group(Aggregation.fields().and("cart", "_id").and("book", "lines.book")).count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1)),
+                Aggregation.group("_id.cart"));
+        int merged = 0;
+        for (Document group : mongoTemplate.aggregate(aggregation, "carts", Document.class)) {
+            Cart cart = mongoTemplate.findById(group.getObjectId("_id"), Cart.class);
+            if (cart == null || cart.getLines() == null) continue;
+            List<CartLine> lines = mergeLines(cart.getLines());
+            Query query = Query.query(Criteria.where("_id").is(cart.getId()).and("lines").size(cart.getLines().size()));
+            merged += (int) mongoTemplate.updateFirst(query, new Update().set("lines", lines), Cart.class).getModifiedCount();
+        }
+        return merged;
+    }
+
+    private List<CartLine> mergeLines(List<CartLine> lines) {
+        Map<ObjectId, CartLine> linesByBook = new LinkedHashMap<>();
+        for (CartLine line : lines) {
+            if (line.getBook() == null || line.getQuantity() <= 0) continue;
+            CartLine existingLine = linesByBook.get(line.getBook());
+            if (existingLine != null) {
+                existingLine.setQuantity(existingLine.getQuantity() + line.getQuantity());
+            } else {
+                linesByBook.put(line.getBook(), new CartLine(line.getId(), line.getBook(), line.getQuantity()));
+            }
+        }
+        return new ArrayList<>(linesByBook.values());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Cart;
+import com.example.bookgarden.entity.CartLine;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Chuyển giỏ hàng dạng cũ (carts.items là danh sách id trỏ sang collection cartitems) sang các dòng nhúng carts.lines.
+// Giữ nguyên _id của cart item để client đang mở giỏ vẫn tham chiếu được; collection cartitems được giữ lại để rollback.
+@Service
+public class CartMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(CartMigrationService.class);
+    private static final String LEGACY_ITEMS_COLLECTION = "cartitems";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyCarts() {
+        Query legacyCarts = Query.query(Criteria.where("items").exists(true));
+        legacyCarts.fields().include("items");
+        int migrated = 0;
+        for (Document cart : mongoTemplate.find(legacyCarts, Document.class, "carts")) {
+            List<ObjectId> itemIds = cart.getList("items", ObjectId.class, new ArrayList<>());
+            Map<ObjectId, CartLine> linesByBook = new LinkedHashMap<>();
+            if (!itemIds.isEmpty()) {
+                Query itemsQuery = Query.query(Criteria.where("_id").in(itemIds));
+                for (Document item : mongoTemplate.find(itemsQuery, Document.class, LEGACY_ITEMS_COLLECTION)) {
+                    ObjectId book = item.getObjectId("book");
+                    int quantity = item.getInteger("quantity", 0);
+                    if (book == null || quantity <= 0) continue;
+                    CartLine existingLine = linesByBook.get(book);
+                    if (existingLine != null) {
+                        existingLine.setQuantity(existingLine.getQuantity() + quantity);
+                    } else {
+                        linesByBook.put(book, new CartLine(item.getObjectId("_id"), book, quantity));
+                    }
+                }
+            }
+
+            Query cartQuery = Query.query(Criteria.where("_id").is(cart.getObjectId("_id")).and("items").exists(true));
+            Update update = new Update().set("lines", new ArrayList<>(linesByBook.values())).unset("items");
+            migrated += (int) mongoTemplate.updateFirst(cartQuery, update, Cart.class).getModifiedCount();
+        }
+        if (migrated > 0) {
+            logger.info("Migrated {} carts to embedded cart lines", migrated);
+        }
+    }
+}
@@ -3,22 +3,28 @@ package com.example.bookgarden.service;
 import com.example.bookgarden.dto.*;
 import com.example.bookgarden.entity.Book;
 import com.example.bookgarden.entity.Cart;
-import com.example.bookgarden.entity.CartItem;
+import com.example.bookgarden.entity.CartLine;
 import com.example.bookgarden.entity.User;
 import com.example.bookgarden.exception.NotFoundException;
 import com.example.bookgarden.repository.BookRepository;
-import com.example.bookgarden.repository.CartItemRepository;
 import com.example.bookgarden.repository.CartRepository;
 import com.example.bookgarden.repository.UserRepository;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class CartService {
@@ -29,56 +35,61 @@ public class CartService {
     @Autowired
     private BookRepository bookRepository;
     @Autowired
-    private CartItemRepository cartItemRepository;
+    private MongoTemplate mongoTemplate;
     @Autowired
     private BookService bookService;
+    @Autowired
+    private WriteBehindCartStore writeBehindCartStore;
 
     public ResponseEntity<GenericResponse> addToCart(String userId, AddToCartRequestDTO addToCartRequestDTO) {
         try {
-            User user = userRepository.findById(userId).orElseThrow(() -> new NotFoundException("Người dùng không tồn tại"));
-
+            ObjectId userObjectId = new ObjectId(userId);
             Book book = bookRepository.findById(new ObjectId(addToCartRequestDTO.getBookID()))
                     .orElseThrow(() -> new NotFoundException("Không tìm thấy sách"));
 
-            Cart cart = getOrCreateCart(user);
-
-            Optional<CartItem> existingCartItem = cartItemRepository.findByCartAndBook(cart.getId(), book.getId());
-
-            if (existingCartItem.isPresent()) {
-                CartItem cartItem = existingCartItem.get();
-                int newQuantity = cartItem.getQuantity() + addToCartRequestDTO.getQuantity();
+            int quantity = addToCartRequestDTO.getQuantity();
+            if (quantity <= 0 || quantity > book.getStock()) {
+                return exceedStockResponse();
+            }
 
-                if (newQuantity <= book.getStock()) {
-                    cartItem.setQuantity(newQuantity);
-                    cartItemRepository.save(cartItem);
-                } else {
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
-                            .success(false)
-                            .message("Số lượng sách trong giỏ hàng vượt quá tồn kho")
-                            .data(null)
-                            .build());
+            Cart cart;
+            if (writeBehindCartStore.isEnabled()) {
+                cart = writeBehindCartStore.modify(userObjectId, storedCart -> addLine(storedCart, book, quantity));
+                if (cart == null) {
+                    if (writeBehindCartStore.find(userObjectId).isPresent()) {
+                        return exceedStockResponse();
+                    }
+                    cart = createCart(userId, new CartLine(book.getId(), quantity));
+                    if (cart != null) {
+                        writeBehindCartStore.put(cart);
+                    } else {
+                        cart = writeBehindCartStore.modify(userObjectId, storedCart -> addLine(storedCart, book, quantity));
+                        if (cart == null) {
+                            return exceedStockResponse();
+                        }
+                    }
                 }
             } else {
-                int requestedQuantity = addToCartRequestDTO.getQuantity();
-                if (requestedQuantity <= book.getStock()) {
-                    CartItem cartItem = new CartItem();
-                    cartItem.setCart(cart.getId());
-                    cartItem.setBook(book.getId());
-                    cartItem.setQuantity(requestedQuantity);
-                    cartItem = cartItemRepository.save(cartItem);
-
-                    cart.getItems().add(cartItem.getId());
-                } else {
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
-                            .success(false)
-                            .message("Số lượng sách trong giỏ hàng vượt quá tồn kho")
-                            .data(null)
-                            .build());
+                cart = incrementLine(userObjectId, book, quantity);
+                if (cart == null) {
+                    cart = pushLine(userObjectId, book, quantity);
+                }
+                if (cart == null && !cartRepository.existsByUser(userObjectId)) {
+                    cart = createCart(userId, new CartLine(book.getId(), quantity));
+                }
+                if (cart == null) {
+                    // Dòng sách đã có nhưng vượt tồn kho, hoặc giỏ/dòng vừa được tạo bởi request đồng thời
+                    cart = pushLine(userObjectId, book, quantity);
+                    if (cart == null) {
+                        cart = incrementLine(userObjectId, book, quantity);
+                    }
+                    if (cart == null) {
+                        return exceedStockResponse();
+                    }
                 }
             }
 
-            Cart updatedCart = cartRepository.save(cart);
-            CartDTO cartDTO = convertToCartDTO(updatedCart);
+            CartDTO cartDTO = convertToCartDTO(cart);
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Đã thêm sách vào giỏ hàng thành công")
@@ -99,22 +110,74 @@ public class CartService {
         }
     }
 
-    private Cart getOrCreateCart(User user) {
-        if (user.getCart() == null) {
-            Cart cart = new Cart(new ObjectId(user.getId()));
-            cart = cartRepository.save(cart);
-            user.setCart(cart.getId().toString());
-            userRepository.save(user);
-            return cart;
-        } else {
-            return cartRepository.findByUser(new ObjectId(user.getId()))
-                    .orElseThrow(() -> new NotFoundException("Không tìm thấy giỏ hàng của người dùng"));
+    // Cộng dồn số lượng vào dòng đã có, chỉ khi tổng mới không vượt tồn kho
+    private Cart incrementLine(ObjectId userId, Book book, int quantity) {
+        Query query = Query.query(Criteria.where("user").is(userId)
+                .and("lines").elemMatch(Criteria.where("book").is(book.getId()).and("quantity").lte(book.getStock() - quantity)));
+        return mongoTemplate.findAndModify(query, new Update().inc("lines.$.quantity", quantity),
+                FindAndModifyOptions.options().returnNew(true), Cart.class);
+    }
+
+    // Thêm dòng mới nếu sách chưa có trong giỏ
+    private Cart pushLine(ObjectId userId, Book book, int quantity) {
+        Query query = Query.query(Criteria.where("user").is(userId).and("lines.book").ne(book.getId()));
+        return mongoTemplate.findAndModify(query, new Update().push("lines", new CartLine(book.getId(), quantity)),
+                FindAndModifyOptions.options().returnNew(true), Cart.class);
+    }
+
+    // Thêm sách vào giỏ trong bộ nhớ (write-behind), cùng điều kiện tồn kho như incrementLine
+    private boolean addLine(Cart cart, Book book, int quantity) {
+        for (CartLine line : cart.getLines()) {
+            if (line.getBook().equals(book.getId())) {
+                if (line.getQuantity() + quantity > book.getStock()) {
+                    return false;
+                }
+                line.setQuantity(line.getQuantity() + quantity);
+                return true;
+            }
+        }
+        cart.getLines().add(new CartLine(book.getId(), quantity));
+        return true;
+    }
+
+    private boolean setLineQuantity(Cart cart, ObjectId bookId, int quantity) {
+        for (CartLine line : cart.getLines()) {
+            if (line.getBook().equals(bookId)) {
+                line.setQuantity(quantity);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Trả về null nếu request đồng thời đã tạo giỏ cho user (unique index trên carts.user)
+    private Cart createCart(String userId, CartLine line) {
+        User user = userRepository.findById(userId).orElseThrow(() -> new NotFoundException("Người dùng không tồn tại"));
+        Cart cart = new Cart(new ObjectId(userId));
+        cart.getLines().add(line);
+        try {
+            cart = cartRepository.insert(cart);
+        } catch (DuplicateKeyException e) {
+            return null;
         }
+        user.setCart(cart.getId().toString());
+        userRepository.save(user);
+        return cart;
+    }
+
+    private ResponseEntity<GenericResponse> exceedStockResponse() {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
+                .success(false)
+                .message("Số lượng sách trong giỏ hàng vượt quá tồn kho")
+                .data(null)
+                .build());
     }
 
     public ResponseEntity<GenericResponse> getCart(String userId) {
         try {
-            Optional<Cart> optionalCart = cartRepository.findByUser(new ObjectId(userId));
+            Optional<Cart> optionalCart = writeBehindCartStore.isEnabled()
+                    ? writeBehindCartStore.find(new ObjectId(userId))
+                    : cartRepository.findByUser(new ObjectId(userId));
             if (optionalCart.isPresent()) {
                 Cart cart = optionalCart.get();
                 CartDTO cartDTO = convertToCartDTO(cart);
@@ -141,64 +204,49 @@ public class CartService {
 
     public ResponseEntity<GenericResponse> updateCartItem(String userId, AddToCartRequestDTO updateCartItemRequestDTO) {
         try {
-            Optional<User> optionalUser = userRepository.findById(userId);
-            if (optionalUser.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Người dùng không tồn tại")
-                        .data(null)
-                        .build());
-            }
-
-            Optional<Cart> optionalCart = cartRepository.findByUser(new ObjectId(userId));
-            if (optionalCart.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+            int newQuantity = updateCartItemRequestDTO.getQuantity();
+            if (newQuantity <= 0) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
                         .success(false)
-                        .message("Không tìm thấy giỏ hàng của người dùng")
+                        .message("Số lượng phải lớn hơn 0")
                         .data(null)
                         .build());
             }
-
-            Cart cart = optionalCart.get();
-            Optional<CartItem> optionalCartItem = cartItemRepository.findByBook(new ObjectId(updateCartItemRequestDTO.getBookID()));
-            if (optionalCartItem.isEmpty()){
+            Optional<Book> optionalBook = bookRepository.findById(new ObjectId(updateCartItemRequestDTO.getBookID()));
+            if (optionalBook.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
                         .success(false)
-                        .message("Không tìm thấy cart item sản phẩm của người dùng")
+                        .message("Không tìm thấy sách")
                         .data(null)
                         .build());
             }
-            CartItem cartItem = optionalCartItem.get();
-            if (!cartItem.getCart().equals(cart.getId())) {
+            Book book = optionalBook.get();
+            if (newQuantity > book.getStock()) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
                         .success(false)
-                        .message("Người dùng không có quyền cập nhật cartItem này")
+                        .message("Số lượng không được vượt quá " + book.getStock() + " sản phẩm tồn kho")
                         .data(null)
                         .build());
             }
 
-            int newQuantity = updateCartItemRequestDTO.getQuantity();
-            Book book = bookRepository.findById(new ObjectId(updateCartItemRequestDTO.getBookID())).get();
-            if (newQuantity <= 0) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Số lượng phải lớn hơn 0")
-                        .data(null)
-                        .build());
-            } else if (newQuantity > book.getStock()) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
+            Cart updatedCart;
+            if (writeBehindCartStore.isEnabled()) {
+                updatedCart = writeBehindCartStore.modify(new ObjectId(userId),
+                        storedCart -> setLineQuantity(storedCart, book.getId(), newQuantity));
+            } else {
+                Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)).and("lines.book").is(book.getId()));
+                updatedCart = mongoTemplate.findAndModify(query, new Update().set("lines.$.quantity", newQuantity),
+                        FindAndModifyOptions.options().returnNew(true), Cart.class);
+            }
+            if (updatedCart == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
                         .success(false)
-                        .message("Số lượng không được vượt quá " + book.getStock() + " sản phẩm tồn kho")
+                        .message("Không tìm thấy cart item sản phẩm của người dùng")
                         .data(null)
                         .build());
-            } else {
-                cartItem.setQuantity(newQuantity);
-                cartItemRepository.save(cartItem);
             }
 
-            Cart updatedCart = cartRepository.save(cart);
             CartDTO cartDTO = convertToCartDTO(updatedCart);
-
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Cập nhật cartItem thành công")
@@ -215,28 +263,17 @@ public class CartService {
 
     public ResponseEntity<GenericResponse> removeCartItem(String userId, String cartItemId) {
         try {
-            Optional<User> optionalUser = userRepository.findById(userId);
-            if (optionalUser.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Người dùng không tồn tại")
-                        .data(null)
-                        .build());
+            ObjectId lineId = new ObjectId(cartItemId);
+            Cart updatedCart;
+            if (writeBehindCartStore.isEnabled()) {
+                updatedCart = writeBehindCartStore.modify(new ObjectId(userId),
+                        storedCart -> storedCart.getLines().removeIf(line -> line.getId().equals(lineId)));
+            } else {
+                Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)).and("lines._id").is(lineId));
+                updatedCart = mongoTemplate.findAndModify(query, new Update().pull("lines", new Document("_id", lineId)),
+                        FindAndModifyOptions.options().returnNew(true), Cart.class);
             }
-
-            Optional<Cart> optionalCart = cartRepository.findByUser(new ObjectId(userId));
-            if (optionalCart.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Không tìm thấy giỏ hàng của người dùng")
-                        .data(null)
-                        .build());
-            }
-
-            Cart cart = optionalCart.get();
-
-            Optional<CartItem> optionalCartItem = cartItemRepository.findById(new ObjectId(cartItemId));
-            if (optionalCartItem.isEmpty()) {
+            if (updatedCart == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
                         .success(false)
                         .message("Không tìm thấy cartItem trong giỏ hàng")
@@ -244,22 +281,7 @@ public class CartService {
                         .build());
             }
 
-            CartItem cartItem = optionalCartItem.get();
-
-            if (!cartItem.getCart().equals(cart.getId())) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Người dùng không có quyền xóa cartItem này")
-                        .data(null)
-                        .build());
-            }
-
-            cart.getItems().remove(cartItem.getId());
-            cartItemRepository.delete(cartItem);
-
-            Cart updatedCart = cartRepository.save(cart);
             CartDTO cartDTO = convertToCartDTO(updatedCart);
-
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Đã xóa cartItem khỏi giỏ hàng thành công")
@@ -274,23 +296,70 @@ public class CartService {
         }
     }
 
+    // Lấy ra và xóa khỏi giỏ các dòng được đặt hàng trong một thao tác nguyên tử
+    public List<CartLine> checkoutLines(String userId, List<ObjectId> lineIds) {
+        if (writeBehindCartStore.isEnabled()) {
+            // Lấy dòng ra khỏi giỏ trong bộ nhớ rồi ghi ngay xuống MongoDB trước khi tạo đơn hàng
+            Set<ObjectId> requestedLines = new HashSet<>(lineIds);
+            List<CartLine> checkedOutLines = new ArrayList<>();
+            writeBehindCartStore.modify(new ObjectId(userId), storedCart -> {
+                storedCart.getLines().stream().filter(line -> requestedLines.contains(line.getId())).forEach(checkedOutLines::add);
+                return storedCart.getLines().removeIf(line -> requestedLines.contains(line.getId()));
+            });
+            writeBehindCartStore.flush(new ObjectId(userId));
+            return checkedOutLines;
+        }
+        Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)));
+        Update update = new Update().pull("lines", new Document("_id", new Document("$in", lineIds)));
+        Cart previousCart = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Cart.class);
+        if (previousCart == null || previousCart.getLines() == null) {
+            return new ArrayList<>();
+        }
+        Set<ObjectId> requestedLines = new HashSet<>(lineIds);
+        return previousCart.getLines().stream()
+                .filter(line -> requestedLines.contains(line.getId()))
+                .collect(Collectors.toList());
+    }
+
+    // Trả các dòng đã lấy bởi checkoutLines về giỏ khi tạo đơn hàng thất bại
+    public void restoreLines(String userId, List<CartLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return;
+        }
+        if (writeBehindCartStore.isEnabled()) {
+            writeBehindCartStore.modify(new ObjectId(userId), storedCart -> storedCart.getLines().addAll(lines));
+            writeBehindCartStore.flush(new ObjectId(userId));
+            return;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("user").is(new ObjectId(userId))),
+                new Update().push("lines").each(lines.toArray()), Cart.class);
+    }
+
     private CartDTO convertToCartDTO(Cart cart) {
         CartDTO cartDTO = new CartDTO();
         cartDTO.setUser(cart.getUser().toString());
 
         List<CartItemDTO> cartItemDTOs = new ArrayList<>();
-        if (cart.getItems() != null) {
-            for (ObjectId cartItemId : cart.getItems()) {
-                CartItem cartItem = cartItemRepository.findById(cartItemId).orElse(null);
-                if (cartItem != null) {
-                    Book book = bookRepository.findById(cartItem.getBook()).orElse(null);
-                    if (book != null) {
-                        CartItemDTO cartItemDTO = new CartItemDTO();
-                        cartItemDTO.set_id(cartItem.getId().toString());
-                        cartItemDTO.setBook(bookService.convertToBookDTO(book));
-                        cartItemDTO.setQuantity(cartItem.getQuantity());
-                        cartItemDTOs.add(cartItemDTO);
-                    }
+        if (cart.getLines() != null && !cart.getLines().isEmpty()) {
+            // Các dòng đã nhúng sẵn trong giỏ, chỉ cần nạp sách và dữ liệu BookDTO theo lô
+            List<ObjectId> bookIds = cart.getLines().stream()
+                    .map(CartLine::getBook)
+                    .distinct()
+                    .collect(Collectors.toList());
+            List<Book> books = bookRepository.findByIdIn(bookIds);
+            List<BookDTO> bookDTOs = bookService.convertToBookDTOs(books);
+            Map<ObjectId, BookDTO> bookDTOsById = new HashMap<>();
+            for (int i = 0; i < books.size(); i++) {
+                bookDTOsById.put(books.get(i).getId(), bookDTOs.get(i));
+            }
+
+            for (CartLine line : cart.getLines()) {
+                if (bookDTOsById.containsKey(line.getBook())) {
+                    CartItemDTO cartItemDTO = new CartItemDTO();
+                    cartItemDTO.set_id(line.getId().toString());
+                    cartItemDTO.setBook(bookDTOsById.get(line.getBook()));
+                    cartItemDTO.setQuantity(line.getQuantity());
+                    cartItemDTOs.add(cartItemDTO);
                 }
             }
         }
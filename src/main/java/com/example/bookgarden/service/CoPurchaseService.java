@@ -0,0 +1,294 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.constant.OrderStatus;
+import com.example.bookgarden.dto.BookDTO;
+import com.example.bookgarden.dto.GenericResponse;
+import com.example.bookgarden.entity.Book;
+import com.example.bookgarden.entity.BookCoPurchase;
+import com.example.bookgarden.repository.BookCoPurchaseRepository;
+import com.example.bookgarden.repository.BookRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class CoPurchaseService {
+    private static final Logger logger = LoggerFactory.getLogger(CoPurchaseService.class);
+    private static final String COUNTED_ORDERS = "book_copurchase_orders";
+    private static final String COUNTED_ORDERS_TTL_INDEX = "counted_ttl";
+    // recordOrder chỉ chờ trong hàng đợi vài giây tới vài phút; dấu được giữ lâu hơn nhiều rồi TTL xóa
+    private static final Duration COUNTED_ORDERS_WINDOW = Duration.ofDays(1);
+    private static final Duration COUNTED_ORDERS_TTL = Duration.ofDays(2);
+
+    @Autowired
+    private BookCoPurchaseRepository bookCoPurchaseRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private BookService bookService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Value("${recommendation.copurchase.top-k:20}")
+    private int topK;
+    @Value("${recommendation.copurchase.max-co-counts:200}")
+    private int maxCoCounts;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureCountedOrdersIndex() {
+        try {
+            mongoTemplate.indexOps(COUNTED_ORDERS).ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .expire(COUNTED_ORDERS_TTL)
+                    .named(COUNTED_ORDERS_TTL_INDEX));
+        } catch (Exception e) {
+            logger.warn("Failed to ensure co-purchase counted orders index: {}", e.getMessage());
+        }
+    }
+
+    public ResponseEntity<GenericResponse> getAlsoBoughtBooks(String bookId, int limit) {
+        try {
+            ObjectId bookObjectId = new ObjectId(bookId);
+            List<ObjectId> neighborIds = bookCoPurchaseRepository.findById(bookObjectId)
+                    .map(BookCoPurchase::getNeighbors)
+                    .orElse(Collections.emptyList());
+
+            List<BookDTO> bookDTOs = findBooksInOrder(neighborIds).stream()
+                    .filter(book -> !book.isDeleted())
+                    .limit(Math.max(1, limit))
+                    .map(bookService::convertToBookDTO)
+                    .collect(Collectors.toList());
+
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy danh sách sách thường được mua cùng thành công")
+                    .data(bookDTOs)
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Không tìm thấy sách")
+                    .data(null)
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy danh sách sách thường được mua cùng")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
+
+    // Gộp điểm láng giềng của các sách cho trước, bỏ qua chính các sách đó
+    public Map<ObjectId, Double> findCandidates(Collection<ObjectId> bookIds, int limit) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<ObjectId> seedBooks = new HashSet<>(bookIds);
+        Map<ObjectId, Double> candidateScores = new HashMap<>();
+        for (BookCoPurchase coPurchase : bookCoPurchaseRepository.findAllById(seedBooks)) {
+            for (int i = 0; i < coPurchase.getNeighbors().size(); i++) {
+                ObjectId neighbor = coPurchase.getNeighbors().get(i);
+                if (!seedBooks.contains(neighbor)) {
+                    candidateScores.merge(neighbor, coPurchase.getScores().get(i), Double::sum);
+                }
+            }
+        }
+
+        Map<ObjectId, Double> candidates = new LinkedHashMap<>();
+        candidateScores.entrySet().stream()
+                .sorted(Map.Entry.<ObjectId, Double>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(entry -> candidates.put(entry.getKey(), entry.getValue()));
+        return candidates;
+    }
+
+    // Cập nhật tăng dần khi có đơn hàng mới: tăng số lượt mua và số lần mua cùng, sau đó tính lại top-K của các sách trong đơn.
+    // Mỗi đơn được đánh dấu trong book_copurchase_orders trước khi đếm: đơn mà rebuild đã đếm (khi recordOrder của nó còn chờ
+    // monitor) đã có dấu nên bị bỏ qua, không bị đếm hai lần.
+    @Async("recommendationExecutor")
+    public synchronized void recordOrder(ObjectId orderId, Collection<ObjectId> bookIds) {
+        try {
+            Set<ObjectId> orderBooks = new LinkedHashSet<>(bookIds);
+            if (orderBooks.isEmpty() || !markCounted(orderId)) {
+                return;
+            }
+            for (ObjectId book : orderBooks) {
+                Update update = new Update().inc("purchaseCount", 1).set("updatedAt", new Date());
+                for (ObjectId other : orderBooks) {
+                    if (!other.equals(book)) {
+                        update.inc("coCounts." + other.toHexString(), 1);
+                    }
+                }
+                mongoTemplate.upsert(Query.query(Criteria.where("_id").is(book)), update, BookCoPurchase.class);
+            }
+            if (orderBooks.size() > 1) {
+                refreshNeighbors(bookCoPurchaseRepository.findAllById(orderBooks));
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to update co-purchase index: {}", e.getMessage());
+        }
+    }
+
+    // Đọc đơn hàng theo luồng (không nạp toàn bộ orders/orderitems vào bộ nhớ), bỏ qua đơn đã hủy giống recordOrder
+    @Scheduled(cron = "${recommendation.copurchase.rebuild-cron:0 30 3 * * *}")
+    public synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+        Date recentSince = new Date(startTime - COUNTED_ORDERS_WINDOW.toMillis());
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("status").ne(OrderStatus.CANCELLED.name())),
+                Aggregation.lookup("orderitems", "orderItems", "_id", "items"),
+                Aggregation.project("orderDate").and("items.book").as("books"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(500).build());
+
+        Map<ObjectId, BookCoPurchase> index = new HashMap<>();
+        List<ObjectId> recentOrders = new ArrayList<>();
+        try (Stream<Document> orders = mongoTemplate.aggregateStream(aggregation, "orders", Document.class)) {
+            orders.forEach(order -> {
+                List<ObjectId> books = order.getList("books", ObjectId.class);
+                if (books == null) return;
+                Set<ObjectId> orderBooks = books.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+                for (ObjectId book : orderBooks) {
+                    BookCoPurchase coPurchase = index.computeIfAbsent(book, BookCoPurchase::new);
+                    coPurchase.setPurchaseCount(coPurchase.getPurchaseCount() + 1);
+                    for (ObjectId other : orderBooks) {
+                        if (!other.equals(book)) {
+                            coPurchase.getCoCounts().merge(other.toHexString(), 1L, Long::sum);
+                        }
+                    }
+                }
+                Date orderDate = order.getDate("orderDate");
+                if (orderDate == null || !orderDate.before(recentSince)) {
+                    recentOrders.add(order.getObjectId("_id"));
+                }
+            });
+        }
+
+        Map<ObjectId, Long> purchaseCounts = index.values().stream()
+                .collect(Collectors.toMap(BookCoPurchase::getBook, BookCoPurchase::getPurchaseCount));
+        for (BookCoPurchase coPurchase : index.values()) {
+            trimCoCounts(coPurchase);
+            computeNeighbors(coPurchase, purchaseCounts);
+        }
+        bookCoPurchaseRepository.saveAll(index.values());
+        // Đơn gần đây có thể còn recordOrder đang chờ monitor; đánh dấu để nó không cộng thêm lần nữa
+        recentOrders.forEach(this::markCounted);
+
+        Query staleQuery = new Query();
+        staleQuery.fields().include("_id");
+        List<ObjectId> staleBooks = mongoTemplate.find(staleQuery, Document.class, "book_copurchases").stream()
+                .map(document -> document.getObjectId("_id"))
+                .filter(book -> !index.containsKey(book))
+                .collect(Collectors.toList());
+        bookCoPurchaseRepository.deleteAllById(staleBooks);
+        logger.info("Rebuilt co-purchase index for {} books in {} ms", index.size(), System.currentTimeMillis() - startTime);
+    }
+
+    // Trả về false nếu đơn đã được đếm (bởi recordOrder trước đó hoặc bởi rebuild)
+    private boolean markCounted(ObjectId orderId) {
+        if (orderId == null) {
+            return true;
+        }
+        try {
+            mongoTemplate.insert(new Document("_id", orderId).append("createdAt", new Date()), COUNTED_ORDERS);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Giữ tối đa maxCoCounts sách mua cùng nhiều nhất, trả về các khóa bị bỏ để xóa khỏi document
+    private List<String> trimCoCounts(BookCoPurchase coPurchase) {
+        Map<String, Long> coCounts = coPurchase.getCoCounts();
+        if (coCounts.size() <= maxCoCounts) {
+            return Collections.emptyList();
+        }
+        List<String> dropped = coCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .skip(maxCoCounts)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        dropped.forEach(coCounts::remove);
+        return dropped;
+    }
+
+    private void refreshNeighbors(List<BookCoPurchase> coPurchases) {
+        Set<ObjectId> relatedBooks = new HashSet<>();
+        for (BookCoPurchase coPurchase : coPurchases) {
+            relatedBooks.add(coPurchase.getBook());
+            coPurchase.getCoCounts().keySet().forEach(hex -> relatedBooks.add(new ObjectId(hex)));
+        }
+        Query countQuery = Query.query(Criteria.where("_id").in(relatedBooks));
+        countQuery.fields().include("purchaseCount");
+        Map<ObjectId, Long> purchaseCounts = mongoTemplate.find(countQuery, BookCoPurchase.class).stream()
+                .collect(Collectors.toMap(BookCoPurchase::getBook, BookCoPurchase::getPurchaseCount));
+
+        for (BookCoPurchase coPurchase : coPurchases) {
+            List<String> dropped = trimCoCounts(coPurchase);
+            computeNeighbors(coPurchase, purchaseCounts);
+            Update update = new Update().set("neighbors", coPurchase.getNeighbors()).set("scores", coPurchase.getScores());
+            dropped.forEach(key -> update.unset("coCounts." + key));
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(coPurchase.getBook())), update, BookCoPurchase.class);
+        }
+    }
+
+    // Điểm tương đồng = số lần mua cùng / sqrt(lượt mua sách A * lượt mua sách B)
+    private void computeNeighbors(BookCoPurchase coPurchase, Map<ObjectId, Long> purchaseCounts) {
+        long purchaseCount = Math.max(1, coPurchase.getPurchaseCount());
+        List<Map.Entry<ObjectId, Double>> scored = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : coPurchase.getCoCounts().entrySet()) {
+            ObjectId other = new ObjectId(entry.getKey());
+            long otherCount = Math.max(1, purchaseCounts.getOrDefault(other, 1L));
+            scored.add(Map.entry(other, entry.getValue() / Math.sqrt((double) purchaseCount * otherCount)));
+        }
+        scored.sort(Map.Entry.<ObjectId, Double>comparingByValue().reversed());
+
+        List<ObjectId> neighbors = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        for (Map.Entry<ObjectId, Double> entry : scored.subList(0, Math.min(topK, scored.size()))) {
+            neighbors.add(entry.getKey());
+            scores.add(entry.getValue());
+        }
+        coPurchase.setNeighbors(neighbors);
+        coPurchase.setScores(scores);
+        coPurchase.setUpdatedAt(new Date());
+    }
+
+    private List<Book> findBooksInOrder(List<ObjectId> bookIds) {
+        if (bookIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<ObjectId, Book> booksById = bookRepository.findByIdIn(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        return bookIds.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
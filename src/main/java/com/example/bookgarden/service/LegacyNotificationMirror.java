@@ -0,0 +1,86 @@
+package com.example.bookgarden.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Client cũ chỉ subscribe /topic/notifications/{userId} hoặc /topic/notifications/broadcast (từng đối tượng)
+// nên không nhận lô broadcast gửi lên /topic/broadcast. Gửi lại từng broadcast lên destination chung cũ và cho các
+// subscription kiểu cũ theo user đang có trên node này, chỉ qua broker trong JVM:
+// mỗi node tự mirror cho client đang kết nối với nó (kể cả broadcast nhận qua relay từ node khác).
+@Service
+public class LegacyNotificationMirror {
+    @Autowired
+    private SimpMessagingTemplate simpMessagingTemplate;
+    @Value("${notification.dispatch.legacy-user-topics:true}")
+    private boolean legacyUserTopics;
+
+    // sessionId -> (subscriptionId -> userId)
+    private final Map<String, Map<String, String>> legacySubscriptions = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        if (destination == null || sessionId == null || subscriptionId == null
+                || !destination.startsWith(NotificationDispatcher.LEGACY_USER_TOPIC)
+                || destination.equals(NotificationDispatcher.LEGACY_BROADCAST_DESTINATION)) {
+            return;
+        }
+        String userId = destination.substring(NotificationDispatcher.LEGACY_USER_TOPIC.length());
+        if (userId.isEmpty() || userId.contains("/")) {
+            return;
+        }
+        legacySubscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, userId);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        legacySubscriptions.computeIfPresent(sessionId, (key, subscriptions) -> {
+            subscriptions.remove(subscriptionId);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        legacySubscriptions.remove(event.getSessionId());
+    }
+
+    // Gọi bởi relay sau khi gửi một lô broadcast cho client cục bộ
+    public void mirrorBroadcasts(String destination, Object payload) {
+        if (!legacyUserTopics || !NotificationDispatcher.BROADCAST_DESTINATION.equals(destination)
+                || !(payload instanceof Collection<?> broadcasts)) {
+            return;
+        }
+        Set<String> userIds = legacySubscriptions.values().stream()
+                .flatMap(subscriptions -> subscriptions.values().stream())
+                .collect(Collectors.toSet());
+        for (Object broadcast : broadcasts) {
+            simpMessagingTemplate.convertAndSend(NotificationDispatcher.LEGACY_BROADCAST_DESTINATION, broadcast);
+            for (String userId : userIds) {
+                simpMessagingTemplate.convertAndSend(NotificationDispatcher.LEGACY_USER_TOPIC + userId, broadcast);
+            }
+        }
+    }
+}
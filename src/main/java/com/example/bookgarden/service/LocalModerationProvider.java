@@ -0,0 +1,27 @@
+package com.example.bookgarden.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Thay cho OpenAI khi chạy offline hoặc test: từ chối nội dung chứa một trong các từ bị chặn
+@Service
+@ConditionalOnProperty(name = "post.moderation.provider", havingValue = "local")
+public class LocalModerationProvider implements ModerationProvider {
+    @Value("${post.moderation.local.blocked-words:}")
+    private List<String> blockedWords;
+
+    @Override
+    public boolean isContentAppropriate(String content) {
+        if (content == null) {
+            return true;
+        }
+        String normalized = content.toLowerCase();
+        return blockedWords.stream()
+                .map(String::trim)
+                .filter(word -> !word.isEmpty())
+                .noneMatch(word -> normalized.contains(word.toLowerCase()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bookgarden.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+// Chạy một node (hoặc khi test): gửi thẳng vào broker trong JVM
+@Service
+@ConditionalOnProperty(name = "websocket.relay", havingValue = "local", matchIfMissing = true)
+public class LocalNotificationRelay implements NotificationRelay {
+    @Autowired
+    private SimpMessagingTemplate simpMessagingTemplate;
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+    @Autowired
+    private LegacyNotificationMirror legacyNotificationMirror;
+
+    @Override
+    public void publish(String destination, Object payload) {
+        simpMessagingTemplate.convertAndSend(destination, payload);
+        legacyNotificationMirror.mirrorBroadcasts(destination, payload);
+        notificationStreamService.deliver(destination, null, payload);
+    }
+
+    @Override
+    public void publishToUser(String userId, String destination, Object payload) {
+        simpMessagingTemplate.convertAndSendToUser(userId, destination, payload);
+        notificationStreamService.deliver(destination, userId, payload);
+    }
+}
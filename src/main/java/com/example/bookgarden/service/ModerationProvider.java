@@ -0,0 +1,7 @@
+package com.example.bookgarden.service;
+
+// Nhà cung cấp kiểm duyệt nội dung bài viết, chọn bằng post.moderation.provider (openai | local).
+// Ném exception khi lỗi tạm thời để PostModerationService thử lại sau.
+public interface ModerationProvider {
+    boolean isContentAppropriate(String content);
+}
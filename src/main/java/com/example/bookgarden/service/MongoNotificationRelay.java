@@ -0,0 +1,164 @@
+package com.example.bookgarden.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Chuyển tiếp tin nhắn giữa các node qua capped collection notification_relay: mỗi node gửi cho client của mình,
+// ghi tin nhắn vào collection, và một thread đọc tailable cursor để gửi lại tin nhắn của node khác cho client cục bộ.
+// Không cần replica set như change stream. Tin nhắn ghi trong lúc node đang khởi động lại có thể bị bỏ qua.
+@Service
+@ConditionalOnProperty(name = "websocket.relay", havingValue = "mongo")
+public class MongoNotificationRelay implements NotificationRelay {
+    private static final Logger logger = LoggerFactory.getLogger(MongoNotificationRelay.class);
+    private static final String COLLECTION = "notification_relay";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private SimpMessagingTemplate simpMessagingTemplate;
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+    @Autowired
+    private LegacyNotificationMirror legacyNotificationMirror;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${websocket.relay.mongo.capped-size-bytes:16777216}")
+    private long cappedSizeBytes;
+
+    private final String nodeId = new ObjectId().toHexString();
+    private volatile boolean running = true;
+    private Thread tailer;
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            try {
+                mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(cappedSizeBytes));
+            } catch (Exception e) {
+                // Node khác vừa tạo collection
+                logger.debug("Relay collection already created: {}", e.getMessage());
+            }
+        }
+        // Chỉ nhận tin nhắn ghi sau khi node khởi động
+        ObjectId latest = latestId(mongoTemplate.getCollection(COLLECTION));
+        tailer = new Thread(() -> tail(latest), "notification-relay");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tailer != null) {
+            tailer.interrupt();
+        }
+    }
+
+    @Override
+    public void publish(String destination, Object payload) {
+        simpMessagingTemplate.convertAndSend(destination, payload);
+        legacyNotificationMirror.mirrorBroadcasts(destination, payload);
+        notificationStreamService.deliver(destination, null, payload);
+        forward(null, destination, payload);
+    }
+
+    @Override
+    public void publishToUser(String userId, String destination, Object payload) {
+        simpMessagingTemplate.convertAndSendToUser(userId, destination, payload);
+        notificationStreamService.deliver(destination, userId, payload);
+        forward(userId, destination, payload);
+    }
+
+    private void forward(String userId, String destination, Object payload) {
+        try {
+            Document message = new Document("origin", nodeId)
+                    .append("destination", destination)
+                    .append("payload", objectMapper.writeValueAsString(payload))
+                    .append("createdAt", new Date());
+            if (userId != null) {
+                message.append("user", userId);
+            }
+            mongoTemplate.getCollection(COLLECTION).insertOne(message);
+        } catch (Exception e) {
+            logger.warn("Failed to relay message to {}: {}", destination, e.getMessage());
+        }
+    }
+
+    // Đọc theo thứ tự tự nhiên (thứ tự server ghi vào capped collection), không lọc theo _id: ObjectId do driver của từng node
+    // tạo nên không tăng dần giữa các node. Khi mở lại cursor, bỏ qua các tin nhắn tới tin cuối đã đọc; nếu tin đó đã bị
+    // capped collection ghi đè thì mọi tin còn lại đều mới hơn nên đọc tất cả.
+    private void tail(ObjectId lastSeen) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(COLLECTION);
+        while (running) {
+            try (MongoCursor<Document> cursor = collection.find()
+                    .cursorType(CursorType.TailableAwait)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                boolean skipping = lastSeen != null && collection.find(Filters.eq("_id", lastSeen)).first() != null;
+                while (running && skipping) {
+                    Document message = cursor.tryNext();
+                    // Hết dữ liệu mà chưa gặp: tin cuối vừa bị ghi đè, các tin sau đều chưa đọc
+                    skipping = message != null && !lastSeen.equals(message.getObjectId("_id"));
+                }
+                while (running && cursor.hasNext()) {
+                    Document message = cursor.next();
+                    lastSeen = message.getObjectId("_id");
+                    if (!nodeId.equals(message.getString("origin"))) {
+                        deliver(message);
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    logger.debug("Relay cursor closed: {}", e.getMessage());
+                }
+            }
+            // Capped collection rỗng làm cursor đóng ngay, chờ một chút rồi mở lại từ tin nhắn cuối đã đọc
+            try {
+                TimeUnit.SECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private ObjectId latestId(MongoCollection<Document> collection) {
+        Document latest = collection.find().sort(new Document("$natural", -1)).first();
+        return latest != null ? latest.getObjectId("_id") : null;
+    }
+
+    private void deliver(Document message) {
+        try {
+            Object payload = objectMapper.readValue(message.getString("payload"), Object.class);
+            String userId = message.getString("user");
+            if (userId != null) {
+                simpMessagingTemplate.convertAndSendToUser(userId, message.getString("destination"), payload);
+            } else {
+                simpMessagingTemplate.convertAndSend(message.getString("destination"), payload);
+                legacyNotificationMirror.mirrorBroadcasts(message.getString("destination"), payload);
+            }
+            notificationStreamService.deliver(message.getString("destination"), userId, payload);
+        } catch (Exception e) {
+            logger.warn("Failed to deliver relayed message: {}", e.getMessage());
+        }
+    }
+}
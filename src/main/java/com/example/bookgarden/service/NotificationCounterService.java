@@ -0,0 +1,73 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.BroadcastNotification;
+import com.example.bookgarden.entity.Notification;
+import com.example.bookgarden.entity.NotificationCursor;
+import com.example.bookgarden.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Date;
+
+// Bộ đếm thông báo chưa đọc của từng user, lưu trong notification_cursors và cập nhật bằng $inc.
+// Chỉ cộng/trừ khi bộ đếm đã được khởi tạo, nên lần khởi tạo đầu tiên đếm lại từ collection notifications.
+@Service
+public class NotificationCounterService {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public void increment(String userId, long delta) {
+        mongoTemplate.updateFirst(initializedCounter(userId), new Update().inc("unreadCount", delta), NotificationCursor.class);
+    }
+
+    public void incrementAll(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, NotificationCursor.class);
+        for (String userId : userIds) {
+            operations.updateOne(initializedCounter(userId), new Update().inc("unreadCount", 1));
+        }
+        operations.execute();
+    }
+
+    // Thông báo riêng chưa đọc cộng với broadcast chưa đọc (mới hơn con trỏ và chưa được đánh dấu riêng)
+    public long getUnreadCount(User user) {
+        NotificationCursor cursor = mongoTemplate.findById(user.getId(), NotificationCursor.class);
+        long personalUnread = cursor != null && cursor.getUnreadCount() != null
+                ? Math.max(0, cursor.getUnreadCount())
+                : initialize(user.getId());
+
+        Date since = user.getCreatedAt() != null ? user.getCreatedAt() : new Date(0);
+        Criteria broadcasts = Criteria.where("createdAt").gte(since);
+        if (cursor != null && cursor.getLastSeenBroadcast() != null && cursor.getLastSeenBroadcast().after(since)) {
+            broadcasts = Criteria.where("createdAt").gt(cursor.getLastSeenBroadcast());
+        }
+        if (cursor != null && cursor.getReadBroadcasts() != null && !cursor.getReadBroadcasts().isEmpty()) {
+            broadcasts = broadcasts.and("_id").nin(cursor.getReadBroadcasts());
+        }
+        return personalUnread + mongoTemplate.count(Query.query(broadcasts), BroadcastNotification.class);
+    }
+
+    private long initialize(String userId) {
+        long unread = mongoTemplate.count(Query.query(Criteria.where("userId").is(userId).and("read").is(false)), Notification.class);
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId).and("unreadCount").exists(false)),
+                    new Update().set("unreadCount", unread), NotificationCursor.class);
+        } catch (DuplicateKeyException e) {
+            // Request đồng thời đã khởi tạo bộ đếm
+        }
+        return unread;
+    }
+
+    private Query initializedCounter(String userId) {
+        return Query.query(Criteria.where("_id").is(userId).and("unreadCount").exists(true));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.bookgarden.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Gom các thông báo phát sinh trong một cửa sổ ngắn rồi gửi một lần: sự kiện chung lên /topic/broadcast,
+// thông báo riêng qua /user/{userId}/queue/notifications. Mỗi lần gửi mang một mảng thông báo.
+// /topic/broadcast (mảng) thay cho /topic/notifications/broadcast (từng đối tượng); destination cũ vẫn nhận
+// từng broadcast qua LegacyNotificationMirror khi bật notification.dispatch.legacy-user-topics.
+@Service
+public class NotificationDispatcher {
+    public static final String BROADCAST_DESTINATION = "/topic/broadcast";
+    public static final String USER_QUEUE = "/queue/notifications";
+    public static final String LEGACY_USER_TOPIC = "/topic/notifications/";
+    public static final String LEGACY_BROADCAST_DESTINATION = "/topic/notifications/broadcast";
+
+    @Autowired
+    private NotificationRelay notificationRelay;
+    // Vẫn gửi từng thông báo lên /topic/notifications/{userId} cho client cũ trong thời gian chuyển đổi;
+    // broadcast được LegacyNotificationMirror gửi lại cho các topic kiểu cũ đang được subscribe trên từng node
+    @Value("${notification.dispatch.legacy-user-topics:true}")
+    private boolean legacyUserTopics;
+
+    private final Queue<Object> pendingBroadcasts = new ConcurrentLinkedQueue<>();
+    // Chỉ sửa danh sách bên trong compute/remove của ConcurrentHashMap nên việc thêm và lấy ra theo từng user là nguyên tử
+    private final Map<String, List<Object>> pendingByUser = new ConcurrentHashMap<>();
+
+    public void broadcast(Object payload) {
+        pendingBroadcasts.add(payload);
+    }
+
+    public void sendToUser(String userId, Object payload) {
+        pendingByUser.compute(userId, (key, payloads) -> {
+            List<Object> pending = payloads != null ? payloads : new ArrayList<>();
+            pending.add(payload);
+            return pending;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${notification.dispatch.window-ms:200}")
+    public void flush() {
+        List<Object> broadcasts = drain(pendingBroadcasts);
+        if (!broadcasts.isEmpty()) {
+            notificationRelay.publish(BROADCAST_DESTINATION, broadcasts);
+        }
+        for (String userId : pendingByUser.keySet()) {
+            List<Object> payloads = pendingByUser.remove(userId);
+            if (payloads == null || payloads.isEmpty()) continue;
+            notificationRelay.publishToUser(userId, USER_QUEUE, payloads);
+            if (legacyUserTopics) {
+                payloads.forEach(payload -> notificationRelay.publish(LEGACY_USER_TOPIC + userId, payload));
+            }
+        }
+    }
+
+    private List<Object> drain(Queue<Object> queue) {
+        List<Object> payloads = new ArrayList<>();
+        Object payload;
+        while ((payload = queue.poll()) != null) {
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.dto.NotificationFanoutDTO;
+import com.example.bookgarden.entity.Notification;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Gửi thông báo tới toàn bộ khách hàng ở nền: duyệt user bằng cursor, ghi thông báo theo lô (insertMany)
+// và đẩy qua WebSocket sau mỗi lô. Tiến độ được giữ trong bộ nhớ một ngày để admin theo dõi.
+@Service
+public class NotificationFanoutService {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationFanoutService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+    @Value("${notification.fanout.chunk-size:1000}")
+    private int chunkSize;
+
+    private final Cache<String, NotificationFanoutDTO> jobs = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(1000)
+            .build();
+
+    public NotificationFanoutDTO createJob(String title) {
+        NotificationFanoutDTO job = new NotificationFanoutDTO(new ObjectId().toHexString(), title);
+        jobs.put(job.getJobId(), job);
+        return job;
+    }
+
+    public NotificationFanoutDTO getJob(String jobId) {
+        return jobs.getIfPresent(jobId);
+    }
+
+    @Async("notificationExecutor")
+    public void fanOutToCustomers(NotificationFanoutDTO job, String message, String url, String createdBy) {
+        Query customers = Query.query(Criteria.where("role").is("Customer"));
+        customers.fields().include("_id");
+        customers.cursorBatchSize(chunkSize);
+
+        List<Notification> chunk = new ArrayList<>(chunkSize);
+        try (Stream<Document> stream = mongoTemplate.stream(customers, Document.class, "users")) {
+            stream.forEach(user -> {
+                chunk.add(buildNotification(user.getObjectId("_id").toHexString(), job.getTitle(), message, url, createdBy));
+                if (chunk.size() >= chunkSize) {
+                    deliver(job, chunk);
+                }
+            });
+            deliver(job, chunk);
+            job.setStatus(NotificationFanoutDTO.STATUS_COMPLETED);
+            logger.info("Notification fan-out {} delivered {} notifications", job.getJobId(), job.getDelivered());
+        } catch (Exception e) {
+            job.setStatus(NotificationFanoutDTO.STATUS_FAILED);
+            job.setError(e.getMessage());
+            logger.error("Notification fan-out {} failed after {} notifications: {}", job.getJobId(), job.getDelivered(), e.getMessage());
+        } finally {
+            job.setFinishedAt(new Date());
+        }
+    }
+
+    private void deliver(NotificationFanoutDTO job, List<Notification> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<String> userIds = new ArrayList<>(chunk.size());
+        for (Notification notification : mongoTemplate.insert(chunk, Notification.class)) {
+            userIds.add(notification.getUserId());
+            notificationDispatcher.sendToUser(notification.getUserId(), notification);
+        }
+        notificationCounterService.incrementAll(userIds);
+        job.setDelivered(job.getDelivered() + chunk.size());
+        chunk.clear();
+    }
+
+    private Notification buildNotification(String userId, String title, String message, String url, String createdBy) {
+        Notification notification = new Notification();
+        notification.setUserId(userId);
+        notification.setTitle(title);
+        notification.setMessage(message);
+        if (url != null) {
+            notification.setUrl(url);
+        }
+        if (createdBy != null && !createdBy.isEmpty()) {
+            notification.setCreatedBy(createdBy);
+        }
+        return notification;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.bookgarden.service;
+
+// Đường phát tin nhắn tới subscriber (STOMP và SSE) trên mọi node. Cài đặt mặc định (local) chỉ gửi qua broker trong JVM,
+// cài đặt mongo chuyển tiếp thêm qua capped collection để các node khác gửi cho client đang kết nối với chúng.
+public interface NotificationRelay {
+    void publish(String destination, Object payload);
+
+    void publishToUser(String userId, String destination, Object payload);
+}
@@ -0,0 +1,172 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Notification;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Giữ collection notifications nhỏ: thông báo đã đọc hết hạn qua TTL index trên readAt, thông báo hệ thống chưa đọc
+// quá cũ được gộp thành một thông báo tổng hợp cho mỗi user. Job chạy theo lô và nghỉ giữa các lô để không chiếm tải DB.
+@Service
+public class NotificationRetentionService {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationRetentionService.class);
+    private static final String READ_TTL_INDEX = "read_ttl";
+    private static final String SYSTEM_CREATOR = "System";
+    private static final String DIGEST_CREATOR = "Digest";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+    @Value("${notification.retention.read-days:30}")
+    private long readDays;
+    @Value("${notification.retention.unread-system-days:90}")
+    private long unreadSystemDays;
+    @Value("${notification.retention.batch-size:500}")
+    private int batchSize;
+    @Value("${notification.retention.max-ids-per-user:200}")
+    private int maxIdsPerUser;
+    @Value("${notification.retention.throttle-ms:200}")
+    private long throttleMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureReadTtlIndex() {
+        try {
+            mongoTemplate.indexOps(Notification.class).ensureIndex(new Index()
+                    .on("readAt", Sort.Direction.ASC)
+                    .expire(Duration.ofDays(readDays))
+                    .named(READ_TTL_INDEX));
+        } catch (Exception e) {
+            // Đổi read-days sau khi index đã tồn tại cần xóa index read_ttl (hoặc collMod) bằng tay
+            logger.warn("Failed to ensure notification TTL index: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${notification.retention.cron}")
+    public void applyRetention() {
+        try {
+            long backfilled = backfillReadAt();
+            long compacted = compactUnreadSystemNotifications();
+            logger.info("Notification retention: backfilled readAt on {} notifications, compacted {} into digests", backfilled, compacted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Notification retention failed: {}", e.getMessage());
+        }
+    }
+
+    // Thông báo đã đọc từ trước khi có readAt chưa có trường này nên TTL không áp dụng; gán readAt = thời điểm chạy
+    private long backfillReadAt() throws InterruptedException {
+        long total = 0;
+        while (true) {
+            Query query = Query.query(Criteria.where("read").is(true).and("readAt").exists(false)).limit(batchSize);
+            query.fields().include("_id");
+            List<ObjectId> ids = mongoTemplate.find(query, Document.class, "notifications").stream()
+                    .map(document -> document.getObjectId("_id"))
+                    .collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                return total;
+            }
+            total += mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(ids)),
+                    new Update().set("readAt", new Date()), Notification.class).getModifiedCount();
+            TimeUnit.MILLISECONDS.sleep(throttleMillis);
+        }
+    }
+
+    // Mỗi lô xử lý tối đa batchSize user theo thứ tự userId tăng dần (con trỏ là userId cuối của lô trước):
+    // thay các thông báo hệ thống chưa đọc quá hạn bằng một thông báo tổng hợp. Mỗi nhóm chỉ mang tối đa maxIdsPerUser id
+    // ($slice sau $group); user có nhiều hơn được xóa tiếp theo từng lô id của riêng user trước khi chuyển con trỏ.
+    private long compactUnreadSystemNotifications() throws InterruptedException {
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(unreadSystemDays));
+        // Thông báo không có userId không gộp được cho ai nên xóa luôn, nếu không chúng sẽ bị quét lại mãi
+        long total = mongoTemplate.remove(Query.query(staleSystemCriteria(cutoff).and("userId").is(null)),
+                Notification.class).getDeletedCount();
+        String lastUserId = "";
+        while (true) {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(staleSystemCriteria(cutoff).and("userId").gt(lastUserId)),
+                    Aggregation.group("userId").push("_id").as("ids").count().as("count").max("createdAt").as("latest"),
+                    Aggregation.sort(Sort.Direction.ASC, "_id"),
+                    Aggregation.limit(batchSize),
+                    Aggregation.project("count", "latest").and(ArrayOperators.Slice.sliceArrayOf("ids").itemCount(maxIdsPerUser)).as("ids"))
+                    .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+            List<Document> groups = mongoTemplate.aggregate(aggregation, "notifications", Document.class).getMappedResults();
+            if (groups.isEmpty()) {
+                return total;
+            }
+            for (Document group : groups) {
+                String userId = group.getString("_id");
+                List<ObjectId> ids = group.getList("ids", ObjectId.class);
+                lastUserId = userId;
+
+                long removed = removeUnread(ids);
+                if (group.getInteger("count") > ids.size()) {
+                    removed += removeRemainingForUser(userId, cutoff);
+                }
+                if (removed == 0) {
+                    // User đã đọc hết các thông báo này giữa lúc aggregate và xóa: không cần thông báo tổng hợp
+                    continue;
+                }
+                Notification digest = new Notification();
+                digest.setUserId(userId);
+                digest.setTitle("Thông báo cũ");
+                digest.setMessage("Bạn có " + removed + " thông báo hệ thống cũ chưa đọc đã được gộp lại.");
+                digest.setCreatedAt(group.getDate("latest"));
+                digest.setCreatedBy(DIGEST_CREATOR);
+                mongoTemplate.insert(digest);
+                notificationCounterService.increment(userId, 1 - removed);
+                total += removed;
+            }
+            TimeUnit.MILLISECONDS.sleep(throttleMillis);
+        }
+    }
+
+    private long removeRemainingForUser(String userId, Date cutoff) throws InterruptedException {
+        long removed = 0;
+        while (true) {
+            Query query = Query.query(staleSystemCriteria(cutoff).and("userId").is(userId)).limit(maxIdsPerUser);
+            query.fields().include("_id");
+            List<ObjectId> ids = mongoTemplate.find(query, Document.class, "notifications").stream()
+                    .map(document -> document.getObjectId("_id"))
+                    .collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                return removed;
+            }
+            removed += removeUnread(ids);
+            TimeUnit.MILLISECONDS.sleep(throttleMillis);
+        }
+    }
+
+    // Chỉ xóa bản còn chưa đọc: thông báo user vừa đọc giữ lại và hết hạn theo TTL
+    private long removeUnread(List<ObjectId> ids) {
+        return mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids).and("read").is(false)),
+                Notification.class).getDeletedCount();
+    }
+
+    // Khớp index creator_read_created: createdBy, read bằng nhau rồi khoảng createdAt
+    private Criteria staleSystemCriteria(Date cutoff) {
+        return Criteria.where("createdBy").is(SYSTEM_CREATOR).and("read").is(false).and("createdAt").lt(cutoff);
+    }
+}
@@ -2,37 +2,73 @@ package com.example.bookgarden.service;
 
 import com.example.bookgarden.dto.GenericResponse;
 import com.example.bookgarden.dto.NotificationDTO;
+import com.example.bookgarden.dto.NotificationFanoutDTO;
+import com.example.bookgarden.dto.NotificationPageDTO;
 import com.example.bookgarden.dto.NotificationRequestDTO;
+import com.example.bookgarden.entity.BroadcastNotification;
 import com.example.bookgarden.entity.Notification;
+import com.example.bookgarden.entity.NotificationCursor;
 import com.example.bookgarden.entity.User;
 import com.example.bookgarden.exception.AccessDeniedException;
 import com.example.bookgarden.exception.NotFoundException;
+import com.example.bookgarden.repository.BroadcastNotificationRepository;
+import com.example.bookgarden.repository.NotificationCursorRepository;
 import com.example.bookgarden.repository.NotificationRepository;
 import com.example.bookgarden.repository.UserRepository;
+import com.example.bookgarden.security.JwtTokenProvider;
+import com.mongodb.client.result.UpdateResult;
 import org.bson.types.ObjectId;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class NotificationService {
+    private static final String BROADCAST_MODE_WRITE = "write";
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final Sort INBOX_ORDER = Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "_id"));
+
     @Autowired
     private NotificationRepository notificationRepository;
     @Autowired
     private UserRepository userRepository;
     @Autowired
-    private SimpMessagingTemplate simpMessagingTemplate;
+    private NotificationDispatcher notificationDispatcher;
+    @Autowired
+    private NotificationFanoutService notificationFanoutService;
+    @Autowired
+    private BroadcastNotificationRepository broadcastNotificationRepository;
+    @Autowired
+    private NotificationCursorRepository notificationCursorRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+    @Value("${notification.stream.token-ttl-ms:300000}")
+    private long streamTokenTtlMillis;
+    @Value("${notification.broadcast.mode:read}")
+    private String broadcastMode;
 
-    public ResponseEntity<GenericResponse> getNotifications(String userId) {
+    // Hộp thư phân trang theo cursor (createdAt giảm dần), gộp thông báo riêng và broadcast; cursor lấy từ nextCursor của trang trước
+    public ResponseEntity<GenericResponse> getNotifications(String userId, String cursor, int limit) {
         try{
             Optional<User> optionalUser = userRepository.findById(userId);
             if(optionalUser.isEmpty()){
@@ -42,11 +78,35 @@ public class NotificationService {
                         .data(null)
                         .build());
             }
-            List<Notification> notifications = notificationRepository.findByUserId(userId);
+            User user = optionalUser.get();
+            int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            Criteria before = cursorCriteria(cursor);
+
+            Query personalQuery = Query.query(Criteria.where("userId").is(userId).andOperator(before))
+                    .with(INBOX_ORDER)
+                    .limit(pageSize + 1);
+            List<Notification> notifications = new ArrayList<>(mongoTemplate.find(personalQuery, Notification.class));
+            notifications.addAll(getBroadcastNotifications(user, before, pageSize + 1));
+            notifications.sort(Comparator.comparing(Notification::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+                    .thenComparing(Notification::getId, Comparator.reverseOrder()));
+
+            String nextCursor = null;
+            if (notifications.size() > pageSize) {
+                notifications = new ArrayList<>(notifications.subList(0, pageSize));
+                Notification last = notifications.get(pageSize - 1);
+                nextCursor = last.getCreatedAt().getTime() + "_" + last.getId().toHexString();
+            }
+            NotificationPageDTO page = new NotificationPageDTO(notifications, nextCursor, notificationCounterService.getUnreadCount(user));
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Lấy danh sách thông báo thành công")
-                    .data(notifications)
+                    .data(page)
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(GenericResponse.builder()
+                    .success(false)
+                    .message("Cursor không hợp lệ")
+                    .data(null)
                     .build());
         } catch (Exception e){
             return ResponseEntity.internalServerError().body(GenericResponse.builder()
@@ -57,6 +117,126 @@ public class NotificationService {
         }
     }
 
+    // Cursor dạng "<createdAt millis>_<id>"; lấy các thông báo đứng sau nó theo thứ tự (createdAt, _id) giảm dần
+    private Criteria cursorCriteria(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return new Criteria();
+        }
+        String[] parts = cursor.split("_");
+        if (parts.length != 2 || !ObjectId.isValid(parts[1])) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        Date createdAt = new Date(Long.parseLong(parts[0]));
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                Criteria.where("createdAt").is(createdAt).and("_id").lt(new ObjectId(parts[1])));
+    }
+
+    // Broadcast tạo từ khi user đăng ký, kèm trạng thái đã đọc theo con trỏ của user
+    private List<Notification> getBroadcastNotifications(User user, Criteria before, int limit) {
+        Date since = user.getCreatedAt() != null ? user.getCreatedAt() : new Date(0);
+        Optional<NotificationCursor> cursor = notificationCursorRepository.findById(user.getId());
+        Date lastSeen = cursor.map(NotificationCursor::getLastSeenBroadcast).orElse(null);
+        Set<ObjectId> readBroadcasts = cursor.map(NotificationCursor::getReadBroadcasts)
+                .map(HashSet::new)
+                .orElseGet(HashSet::new);
+        Query query = Query.query(Criteria.where("createdAt").gte(since).andOperator(before))
+                .with(INBOX_ORDER)
+                .limit(limit);
+        return mongoTemplate.find(query, BroadcastNotification.class).stream()
+                .map(broadcast -> toNotification(broadcast, user.getId(),
+                        readBroadcasts.contains(broadcast.getId())
+                                || (lastSeen != null && !broadcast.getCreatedAt().after(lastSeen))))
+                .collect(Collectors.toList());
+    }
+
+    public ResponseEntity<GenericResponse> getUnreadCount(String userId) {
+        try {
+            Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty()) {
+                return ResponseEntity.badRequest().body(GenericResponse.builder()
+                        .success(false)
+                        .message("Không tìm thấy người dùng")
+                        .data(null)
+                        .build());
+            }
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy số thông báo chưa đọc thành công")
+                    .data(notificationCounterService.getUnreadCount(optionalUser.get()))
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy số thông báo chưa đọc: " + e.getMessage())
+                    .data(null)
+                    .build());
+        }
+    }
+
+    // Token ngắn hạn để EventSource mở /stream?token=..., vì trình duyệt không cho gắn header Authorization
+    public ResponseEntity<GenericResponse> createStreamToken(String userId) {
+        try {
+            if (!userRepository.existsById(userId)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Không tìm thấy người dùng")
+                        .data(null)
+                        .build());
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("token", jwtTokenProvider.generateStreamToken(userId, streamTokenTtlMillis));
+            data.put("expiresIn", streamTokenTtlMillis / 1000);
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Tạo token cho luồng thông báo thành công")
+                    .data(data)
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi tạo token cho luồng thông báo")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
+
+    // Mở luồng SSE; lastEventId lấy từ header Last-Event-ID mà trình duyệt gửi lại khi tự kết nối lại
+    public SseEmitter streamNotifications(String userId, String lastEventId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy người dùng"));
+        return notificationStreamService.subscribe(user, lastEventId);
+    }
+
+    // Đánh dấu tất cả đã đọc: một updateMany cho thông báo riêng, broadcast thì dời con trỏ lastSeenBroadcast
+    public ResponseEntity<GenericResponse> markAllAsRead(String userId) {
+        try {
+            UpdateResult result = mongoTemplate.updateMulti(Query.query(Criteria.where("userId").is(userId).and("read").is(false)),
+                    new Update().set("read", true).set("readAt", new Date()), Notification.class);
+            if (result.getModifiedCount() > 0) {
+                notificationCounterService.increment(userId, -result.getModifiedCount());
+            }
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId)),
+                    new Update().set("lastSeenBroadcast", new Date()).set("readBroadcasts", new ArrayList<>()), NotificationCursor.class);
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Đánh dấu tất cả thông báo đã đọc thành công")
+                    .data(result.getModifiedCount())
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi đánh dấu tất cả đã đọc: " + e.getMessage())
+                    .data(null)
+                    .build());
+        }
+    }
+
+    private Notification toNotification(BroadcastNotification broadcast, String userId, boolean read) {
+        return new Notification(broadcast.getId(), userId, broadcast.getTitle(), broadcast.getMessage(), broadcast.getUrl(),
+                broadcast.getCreatedAt(), read, broadcast.getCreatedBy(), null);
+    }
+
     public Notification createNotification(String userId, String title, String message, String url, String createdBy) {
         Notification notification = new Notification();
         notification.setUserId(userId);
@@ -68,19 +248,25 @@ public class NotificationService {
         if (createdBy != null && !createdBy.isEmpty()) {
             notification.setCreatedBy(createdBy);
         }
-        return notificationRepository.save(notification);
+        notification = notificationRepository.save(notification);
+        notificationCounterService.increment(userId, 1);
+        return notification;
     }
     public ResponseEntity<GenericResponse> createNotificationForAll(String userId, NotificationRequestDTO notificationRequestDTO){
         try {
             checkAdminAndManagerPermission(userId);
-            List<User> customers = userRepository.findAllCustomerUsers();
-            for (User customer : customers) {
-                Notification createdNotification = createNotification(customer.getId(), notificationRequestDTO.getTitle(), notificationRequestDTO.getMessage(), "", "Admin");
-                simpMessagingTemplate.convertAndSend("/topic/notifications/" + customer.getId(), createdNotification);
+            NotificationFanoutDTO job = notifyAllCustomers(notificationRequestDTO.getTitle(), notificationRequestDTO.getMessage(), "", "Admin");
+            if (NotificationFanoutDTO.STATUS_FAILED.equals(job.getStatus())) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Hệ thống đang bận gửi thông báo, vui lòng thử lại sau")
+                        .data(job)
+                        .build());
             }
-            return ResponseEntity.status(HttpStatus.OK).body(GenericResponse.builder()
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(GenericResponse.builder()
                     .success(true)
-                    .message("Tạo thông báo cho tất cả người dùng thành công")
+                    .message("Đang gửi thông báo cho tất cả người dùng")
+                    .data(job)
                     .build());
         } catch (Exception e) {
             return ResponseEntity.status(500).body(GenericResponse.builder()
@@ -91,11 +277,80 @@ public class NotificationService {
         }
 
     }
+
+    // Gửi thông báo cho toàn bộ khách hàng ở nền, trả về ngay tiến độ để theo dõi qua getFanoutProgress
+    // Mặc định (fan-out-on-read) chỉ lưu một broadcast và gửi một lần lên topic chung; chế độ write tạo từng bản cho mỗi khách hàng
+    public NotificationFanoutDTO notifyAllCustomers(String title, String message, String url, String createdBy) {
+        NotificationFanoutDTO job = notificationFanoutService.createJob(title);
+        if (BROADCAST_MODE_WRITE.equals(broadcastMode)) {
+            try {
+                notificationFanoutService.fanOutToCustomers(job, message, url, createdBy);
+            } catch (TaskRejectedException e) {
+                // Hàng đợi notificationExecutor đầy: đánh dấu job thất bại thay vì ném lỗi về nơi gọi (vd. thêm sách đã lưu xong)
+                job.setStatus(NotificationFanoutDTO.STATUS_FAILED);
+                job.setError("Hàng đợi gửi thông báo đang đầy");
+                job.setFinishedAt(new Date());
+            }
+            return job;
+        }
+
+        BroadcastNotification broadcast = new BroadcastNotification();
+        broadcast.setTitle(title);
+        broadcast.setMessage(message);
+        if (url != null) {
+            broadcast.setUrl(url);
+        }
+        if (createdBy != null && !createdBy.isEmpty()) {
+            broadcast.setCreatedBy(createdBy);
+        }
+        broadcast = broadcastNotificationRepository.save(broadcast);
+        notificationDispatcher.broadcast(broadcast);
+
+        job.setBroadcastId(broadcast.getId().toHexString());
+        job.setStatus(NotificationFanoutDTO.STATUS_COMPLETED);
+        job.setFinishedAt(new Date());
+        return job;
+    }
+
+    public ResponseEntity<GenericResponse> getFanoutProgress(String userId, String jobId) {
+        try {
+            checkAdminAndManagerPermission(userId);
+            NotificationFanoutDTO job = notificationFanoutService.getJob(jobId);
+            if (job == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Không tìm thấy tiến trình gửi thông báo")
+                        .data(null)
+                        .build());
+            }
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy tiến độ gửi thông báo thành công")
+                    .data(job)
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy tiến độ gửi thông báo: " + e.getMessage())
+                    .data(null)
+                    .build());
+        }
+    }
     @Transactional
     public ResponseEntity<GenericResponse> markAsRead(String userId, String notificationId) {
         try {
             Optional<Notification> optionalNotification = notificationRepository.findById(new ObjectId(notificationId));
             if (optionalNotification.isEmpty()) {
+                Optional<BroadcastNotification> optionalBroadcast = broadcastNotificationRepository.findById(new ObjectId(notificationId));
+                if (optionalBroadcast.isPresent()) {
+                    mongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId)),
+                            new Update().addToSet("readBroadcasts", optionalBroadcast.get().getId()), NotificationCursor.class);
+                    return ResponseEntity.status(HttpStatus.OK).body(GenericResponse.builder()
+                            .success(true)
+                            .message("Đánh dấu đã đọc thành công")
+                            .data(toNotification(optionalBroadcast.get(), userId, true))
+                            .build());
+                }
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
                         .success(false)
                         .message("Không tìm thấy thông báo")
@@ -113,8 +368,15 @@ public class NotificationService {
                         .build());
             }
 
-            notification.setRead(true);
-            notification = notificationRepository.save(notification);
+            if (!notification.isRead()) {
+                UpdateResult result = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(notification.getId()).and("read").is(false)),
+                        new Update().set("read", true).set("readAt", new Date()), Notification.class);
+                if (result.getModifiedCount() > 0) {
+                    notificationCounterService.increment(userId, -1);
+                }
+                notification.setRead(true);
+                notification.setReadAt(new Date());
+            }
 
             return ResponseEntity.status(HttpStatus.OK).body(GenericResponse.builder()
                     .success(true)
@@ -149,7 +411,9 @@ public class NotificationService {
                         .build());
             }
 
-            List<Notification> notifications = notificationRepository.findByCreatedBy("Admin");
+            List<Notification> notifications = new ArrayList<>(notificationRepository.findByCreatedBy("Admin"));
+            broadcastNotificationRepository.findByCreatedByOrderByCreatedAtDesc("Admin")
+                    .forEach(broadcast -> notifications.add(toNotification(broadcast, null, false)));
             List<NotificationDTO> notificationDTOs = notifications.stream()
                     .map(this::convertToNotificationDTO)
                     .collect(Collectors.toList());
@@ -0,0 +1,251 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.BroadcastNotification;
+import com.example.bookgarden.entity.Notification;
+import com.example.bookgarden.entity.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Luồng Server-Sent Events cho client chỉ nhận thông báo: một response HTTP dài gộp thông báo riêng (event "notification")
+// và broadcast (event "broadcast"). SseEmitter chạy trên async servlet nên kết nối rảnh không giữ thread nào.
+// Id của event là _id của thông báo; khi kết nối lại với Last-Event-ID, các thông báo từ giây của id đó trở đi được gửi lại
+// (có thể trùng vài event, client bỏ qua id đã nhận). Nếu bỏ lỡ quá nhiều, gửi event "resync" để client tải lại hộp thư.
+// Mỗi payload chỉ serialize một lần; việc ghi ra socket chạy trên notificationStreamExecutor qua hàng đợi riêng của từng kết nối
+// nên thread dispatcher/relay không bị chặn. Kết nối dồn quá max-pending event bị đóng, client kết nối lại với Last-Event-ID.
+@Service
+public class NotificationStreamService {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationStreamService.class);
+    private static final String EVENT_NOTIFICATION = "notification";
+    private static final String EVENT_BROADCAST = "broadcast";
+    private static final String EVENT_RESYNC = "resync";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    @Qualifier("notificationStreamExecutor")
+    private Executor notificationStreamExecutor;
+    @Value("${notification.stream.timeout-ms:1800000}")
+    private long timeoutMillis;
+    @Value("${notification.stream.max-per-user:5}")
+    private int maxPerUser;
+    @Value("${notification.stream.replay-limit:100}")
+    private int replayLimit;
+    @Value("${notification.stream.max-pending:256}")
+    private int maxPending;
+
+    private final Map<String, List<Connection>> connectionsByUser = new ConcurrentHashMap<>();
+
+    private static final class Connection {
+        private final String userId;
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Connection(String userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+    }
+
+    private record SerializedEvent(String id, String json) {
+    }
+
+    public SseEmitter subscribe(User user, String lastEventId) {
+        String userId = user.getId();
+        Connection connection = new Connection(userId, new SseEmitter(timeoutMillis));
+        List<Connection> evicted = new ArrayList<>();
+        connectionsByUser.compute(userId, (key, connections) -> {
+            List<Connection> current = connections != null ? connections : new CopyOnWriteArrayList<>();
+            current.add(connection);
+            // Mở quá nhiều tab thì đóng kết nối cũ nhất
+            while (current.size() > maxPerUser) {
+                evicted.add(current.remove(0));
+            }
+            return current;
+        });
+        evicted.forEach(this::close);
+        connection.emitter.onCompletion(() -> remove(connection));
+        connection.emitter.onTimeout(() -> remove(connection));
+        connection.emitter.onError(e -> remove(connection));
+
+        // Đăng ký trước rồi mới gửi lại để không lọt thông báo tạo trong lúc replay; replay đi cùng hàng đợi nên giữ thứ tự
+        if (lastEventId != null && ObjectId.isValid(lastEventId)) {
+            replay(user, new ObjectId(lastEventId), connection);
+        }
+        return connection.emitter;
+    }
+
+    // Được relay gọi khi tin nhắn tới node này (của chính node hoặc chuyển tiếp từ node khác); chỉ xếp hàng, không ghi socket
+    public void deliver(String destination, String userId, Object payload) {
+        if (userId == null && NotificationDispatcher.BROADCAST_DESTINATION.equals(destination)) {
+            if (connectionsByUser.isEmpty()) return;
+            List<SerializedEvent> events = serialize(payload);
+            connectionsByUser.values().forEach(connections -> connections.forEach(connection -> enqueueAll(connection, EVENT_BROADCAST, events)));
+        } else if (userId != null && NotificationDispatcher.USER_QUEUE.equals(destination)) {
+            List<Connection> connections = connectionsByUser.get(userId);
+            if (connections != null) {
+                List<SerializedEvent> events = serialize(payload);
+                connections.forEach(connection -> enqueueAll(connection, EVENT_NOTIFICATION, events));
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionsByUser.values().stream().mapToInt(List::size).sum();
+    }
+
+    // Comment định kỳ giữ kết nối qua proxy và phát hiện client đã ngắt
+    @Scheduled(fixedDelayString = "${notification.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        connectionsByUser.values().forEach(connections -> connections.forEach(connection ->
+                enqueue(connection, SseEmitter.event().comment("ping"))));
+    }
+
+    private void replay(User user, ObjectId lastEventId, Connection connection) {
+        Date since = lastEventId.getDate();
+        Sort order = Sort.by(Sort.Direction.ASC, "createdAt").and(Sort.by(Sort.Direction.ASC, "_id"));
+        List<Notification> notifications = mongoTemplate.find(Query.query(Criteria.where("userId").is(user.getId())
+                .and("createdAt").gte(since).and("_id").ne(lastEventId)).with(order).limit(replayLimit + 1), Notification.class);
+        Date broadcastSince = user.getCreatedAt() != null && user.getCreatedAt().after(since) ? user.getCreatedAt() : since;
+        List<BroadcastNotification> broadcasts = mongoTemplate.find(Query.query(Criteria.where("createdAt").gte(broadcastSince)
+                .and("_id").ne(lastEventId)).with(order).limit(replayLimit + 1), BroadcastNotification.class);
+
+        if (notifications.size() + broadcasts.size() > replayLimit) {
+            enqueue(connection, SseEmitter.event().name(EVENT_RESYNC).data("{}"));
+            return;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < notifications.size() || j < broadcasts.size()) {
+            boolean personal = j >= broadcasts.size() || (i < notifications.size()
+                    && !notifications.get(i).getCreatedAt().after(broadcasts.get(j).getCreatedAt()));
+            if (personal) {
+                Notification notification = notifications.get(i++);
+                enqueueAll(connection, EVENT_NOTIFICATION, serialize(notification));
+            } else {
+                BroadcastNotification broadcast = broadcasts.get(j++);
+                enqueueAll(connection, EVENT_BROADCAST, serialize(broadcast));
+            }
+        }
+    }
+
+    // Dispatcher gửi theo lô (mảng); SSE gửi từng thông báo một để mỗi event có id riêng
+    private List<SerializedEvent> serialize(Object payload) {
+        JsonNode node = objectMapper.valueToTree(payload);
+        Iterable<JsonNode> items = node.isArray() ? node : List.of(node);
+        List<SerializedEvent> events = new ArrayList<>();
+        for (JsonNode item : items) {
+            String id = item.hasNonNull("id") ? item.get("id").asText() : null;
+            try {
+                events.add(new SerializedEvent(id, objectMapper.writeValueAsString(item)));
+            } catch (JsonProcessingException e) {
+                logger.warn("Failed to serialize SSE event {}: {}", id, e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    private void enqueueAll(Connection connection, String name, List<SerializedEvent> events) {
+        for (SerializedEvent serialized : events) {
+            SseEmitter.SseEventBuilder event = SseEmitter.event().name(name).data(serialized.json());
+            if (serialized.id() != null) {
+                event.id(serialized.id());
+            }
+            if (!enqueue(connection, event)) {
+                return;
+            }
+        }
+    }
+
+    private boolean enqueue(Connection connection, SseEmitter.SseEventBuilder event) {
+        if (connection.closed) {
+            return false;
+        }
+        if (connection.pendingCount.incrementAndGet() > maxPending) {
+            logger.debug("Closing slow SSE listener of user {}", connection.userId);
+            close(connection);
+            return false;
+        }
+        connection.pending.add(event);
+        schedule(connection);
+        return true;
+    }
+
+    // Mỗi kết nối có nhiều nhất một tác vụ drain đang chờ hoặc đang chạy nên event gửi đúng thứ tự
+    private void schedule(Connection connection) {
+        if (!connection.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            notificationStreamExecutor.execute(() -> drain(connection));
+        } catch (TaskRejectedException e) {
+            connection.draining.set(false);
+            close(connection);
+        }
+    }
+
+    private void drain(Connection connection) {
+        SseEmitter.SseEventBuilder event;
+        while (!connection.closed && (event = connection.pending.poll()) != null) {
+            connection.pendingCount.decrementAndGet();
+            try {
+                connection.emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping SSE listener of user {}: {}", connection.userId, e.getMessage());
+                remove(connection);
+                return;
+            }
+        }
+        connection.draining.set(false);
+        // Event được thêm sau lần poll cuối nhưng lúc đó draining vẫn đang bật
+        if (!connection.closed && !connection.pending.isEmpty()) {
+            schedule(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        remove(connection);
+        try {
+            connection.emitter.complete();
+        } catch (IllegalStateException e) {
+            logger.debug("SSE listener of user {} already closed", connection.userId);
+        }
+    }
+
+    private void remove(Connection connection) {
+        connection.closed = true;
+        connection.pending.clear();
+        connectionsByUser.computeIfPresent(connection.userId, (key, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+}
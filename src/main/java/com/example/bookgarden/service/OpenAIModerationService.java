@@ -1,27 +1,36 @@
 package com.example.bookgarden.service;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @Service
-public class OpenAIModerationService {
+@ConditionalOnProperty(name = "post.moderation.provider", havingValue = "openai", matchIfMissing = true)
+public class OpenAIModerationService implements ModerationProvider {
 
     @Value("${openai.api.key}")
     private String openaiApiKey;
 
     private final RestTemplate restTemplate;
 
-    public OpenAIModerationService(RestTemplateBuilder restTemplateBuilder) {
-        this.restTemplate = restTemplateBuilder.build();
+    public OpenAIModerationService(RestTemplateBuilder restTemplateBuilder,
+                                   @Value("${post.moderation.openai.connect-timeout-ms:3000}") long connectTimeoutMillis,
+                                   @Value("${post.moderation.openai.read-timeout-ms:20000}") long readTimeoutMillis) {
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
+                .build();
     }
 
+    @Override
     public boolean isContentAppropriate(String content) {
         String url = "https://api.openai.com/v1/chat/completions";
         HttpHeaders headers = new HttpHeaders();
@@ -1,6 +1,7 @@
 package com.example.bookgarden.service;
 
 import com.example.bookgarden.constant.OrderStatus;
+import com.example.bookgarden.constant.TimeGranularity;
 import com.example.bookgarden.dto.*;
 import com.example.bookgarden.entity.*;
 import com.example.bookgarden.exception.ForbiddenException;
@@ -18,12 +19,13 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -43,11 +45,15 @@ public class OrderService {
     @Autowired
     private OrderItemRepository orderItemRepository;
     @Autowired
-    private CartItemRepository cartItemRepository;
+    private CartService cartService;
     @Autowired
     private NotificationService notificationService;
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private NotificationDispatcher notificationDispatcher;
+    @Autowired
+    private RecommendationModelBuilder recommendationModelBuilder;
+    @Autowired
+    private CoPurchaseService coPurchaseService;
     @Value("${client.host}")
     private String clientHost;
     private final ModelMapper modelMapper = new ModelMapper();
@@ -81,16 +87,28 @@ public class OrderService {
                     .map(ObjectId::new)
                     .collect(Collectors.toList());
 
-            List<OrderItem> orderItems = processCartItems(cartItemObjectIds);
-
-            order.setOrderItems(orderItems.stream().map(OrderItem::getId).collect(Collectors.toList()));
-            order.setStatus("PENDING");
-            Order savedOrder = orderRepository.save(order);
+            // Không có MongoTransactionManager nên @Transactional không bao được các bước dưới; các dòng đã lấy khỏi giỏ
+            // được hoàn lại (cùng tồn kho và dòng đơn đã tạo) nếu một bước bị lỗi giữa chừng
+            List<CartLine> cartLines = cartService.checkoutLines(userId, cartItemObjectIds);
+            List<CartLine> reservedLines = new ArrayList<>();
+            List<OrderItem> orderItems = new ArrayList<>();
+            Order savedOrder;
+            try {
+                processCartItems(cartLines, reservedLines, orderItems);
+                order.setOrderItems(orderItems.stream().map(OrderItem::getId).collect(Collectors.toList()));
+                order.setStatus("PENDING");
+                savedOrder = orderRepository.save(order);
+            } catch (RuntimeException e) {
+                rollbackCheckout(userId, cartLines, reservedLines, orderItems);
+                throw e;
+            }
 
             OrderDTO orderDTO = convertToOrderDTO(savedOrder);
 
             String orderHistoryUrl = clientHost + "/profile/order-history";
             notificationService.createNotification(userId, "Đơn hàng mới", "Đơn hàng của bạn đã được đặt thành công.", orderHistoryUrl, "");
+            recommendationModelBuilder.requestRefresh(userId);
+            coPurchaseService.recordOrder(savedOrder.getId(), orderItems.stream().map(OrderItem::getBook).filter(Objects::nonNull).collect(Collectors.toList()));
 
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
@@ -147,11 +165,8 @@ public class OrderService {
         }
     }
 
-    private List<OrderItem> processCartItems(List<ObjectId> cartItemObjectIds) {
-        List<CartItem> cartItems = cartItemRepository.findAllByIdIn(cartItemObjectIds);
-        List<OrderItem> orderItems = new ArrayList<>();
-
-        for (CartItem cartItem : cartItems) {
+    private void processCartItems(List<CartLine> cartItems, List<CartLine> reservedLines, List<OrderItem> orderItems) {
+        for (CartLine cartItem : cartItems) {
             OrderItem orderItem = new OrderItem();
             orderItem.setBook(cartItem.getBook());
             orderItem.setQuantity(cartItem.getQuantity());
@@ -160,12 +175,25 @@ public class OrderService {
             book.setSoldQuantity(book.getSoldQuantity() + cartItem.getQuantity());
             book.setStock(book.getStock() - cartItem.getQuantity());
             bookRepository.save(book);
+            reservedLines.add(cartItem);
 
             orderItems.add(orderItemRepository.save(orderItem));
         }
+    }
 
-        cartItemRepository.deleteAll(cartItems);
-        return orderItems;
+    private void rollbackCheckout(String userId, List<CartLine> cartLines, List<CartLine> reservedLines, List<OrderItem> orderItems) {
+        try {
+            for (CartLine line : reservedLines) {
+                bookRepository.findById(line.getBook()).ifPresent(book -> {
+                    book.setSoldQuantity(book.getSoldQuantity() - line.getQuantity());
+                    book.setStock(book.getStock() + line.getQuantity());
+                    bookRepository.save(book);
+                });
+            }
+            orderItemRepository.deleteAll(orderItems);
+        } finally {
+            cartService.restoreLines(userId, cartLines);
+        }
     }
 
     public ResponseEntity<GenericResponse> getUserOrders(String userId) {
@@ -424,7 +452,7 @@ public class OrderService {
 
             String notificationMessage = "Trạng thái đơn hàng của bạn đã được cập nhật thành " + updateOrderStatusRequestDTO.getStatus();
             Notification notification = notificationService.createNotification(order.getUser().toString(), "Cập nhật đơn hàng", notificationMessage, clientHost + "/profile/order-history", "");
-            messagingTemplate.convertAndSend("/topic/notifications/" + order.getUser().toString(), notification);
+            notificationDispatcher.sendToUser(order.getUser().toString(), notification);
 
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
@@ -604,8 +632,15 @@ public class OrderService {
         }
     }
 
-    public List<CustomerOrderCountDTO> getTopCustomers() {
-        List<CustomerOrderCount> topCustomers = orderRepository.findTopCustomers();
+    // period: day/week/month/year tính từ đầu kỳ hiện tại, bỏ trống để lấy toàn bộ; rankBy: orders hoặc revenue
+    @Cacheable(value = "topCustomersCache", key = "#period + '_' + #rankBy + '_' + #limit")
+    public List<CustomerOrderCountDTO> getTopCustomers(String period, String rankBy, int limit) {
+        TimeGranularity granularity = TimeGranularity.fromString(period);
+        Date since = granularity == null ? new Date(0)
+                : Date.from(granularity.truncate(LocalDate.now()).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        List<CustomerOrderCount> topCustomers = "revenue".equalsIgnoreCase(rankBy)
+                ? orderRepository.findTopCustomersByRevenue(since, limit)
+                : orderRepository.findTopCustomers(since, limit);
         return topCustomers.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
@@ -613,12 +648,10 @@ public class OrderService {
         CustomerOrderCountDTO dto = new CustomerOrderCountDTO();
         dto.setUserId(customerOrderCount.getUserId().toString());
         dto.setOrderCount(customerOrderCount.getOrderCount());
-
-        userRepository.findById(customerOrderCount.getUserId().toString()).ifPresent(user -> {
-            dto.setFullName(user.getFullName());
-            dto.setEmail(user.getEmail());
-            dto.setAvatar(user.getAvatar());
-        });
+        dto.setTotalSpent(customerOrderCount.getTotalSpent());
+        dto.setFullName(customerOrderCount.getFullName());
+        dto.setEmail(customerOrderCount.getEmail());
+        dto.setAvatar(customerOrderCount.getAvatar());
         return dto;
     }
 }
@@ -0,0 +1,92 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Post;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Tính trước điểm "hot" cho bảng tin: mỗi bình luận trong cửa sổ window-days đóng góp 0.5^(tuổi / half-life),
+// cộng thêm một phần theo độ mới của chính bài viết. Bài viết không còn hoạt động trong cửa sổ bị xóa điểm
+// nên chỉ rơi khỏi bảng tin "hot", vẫn có trong bảng tin mới nhất.
+@Service
+public class PostHotScoreService {
+    private static final Logger logger = LoggerFactory.getLogger(PostHotScoreService.class);
+    private static final String APPROVED = "Approved";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Value("${post.hot.window-days:7}")
+    private long windowDays;
+    @Value("${post.hot.half-life-hours:24}")
+    private double halfLifeHours;
+    @Value("${post.hot.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${post.hot.refresh-interval:600000}",
+            initialDelayString = "${post.hot.initial-delay:30000}")
+    public void refreshHotScores() {
+        long now = System.currentTimeMillis();
+        Date windowStart = new Date(now - TimeUnit.DAYS.toMillis(windowDays));
+        Map<ObjectId, Double> scores = new HashMap<>();
+
+        Query recentPosts = Query.query(Criteria.where("status").is(APPROVED).and("deleted").is(false)
+                .and("postedDate").gte(windowStart));
+        recentPosts.fields().include("_id", "postedDate");
+        try (Stream<Document> stream = mongoTemplate.stream(recentPosts, Document.class, "posts")) {
+            stream.forEach(post -> scores.merge(post.getObjectId("_id"), decay(now, post.getDate("postedDate")), Double::sum));
+        }
+
+        Query recentComments = Query.query(Criteria.where("createdDate").gte(windowStart));
+        recentComments.fields().include("post", "createdDate");
+        try (Stream<Document> stream = mongoTemplate.stream(recentComments, Document.class, "comments")) {
+            stream.forEach(comment -> {
+                ObjectId postId = comment.getObjectId("post");
+                if (postId != null) {
+                    scores.merge(postId, decay(now, comment.getDate("createdDate")), Double::sum);
+                }
+            });
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Post.class);
+        int pending = 0;
+        for (Map.Entry<ObjectId, Double> entry : scores.entrySet()) {
+            bulk.updateOne(Query.query(Criteria.where("_id").is(entry.getKey())), new Update().set("hotScore", entry.getValue()));
+            if (++pending >= batchSize) {
+                bulk.execute();
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Post.class);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            bulk.execute();
+        }
+        // Số bài có hoạt động trong cửa sổ nhỏ nên $nin ở đây vẫn gọn
+        long cleared = mongoTemplate.updateMulti(Query.query(Criteria.where("hotScore").ne(null).and("_id").nin(scores.keySet())),
+                new Update().unset("hotScore"), Post.class).getModifiedCount();
+        logger.info("Refreshed hot score of {} posts in {} ms, cleared {}", scores.size(), System.currentTimeMillis() - now, cleared);
+    }
+
+    private double decay(long now, Date date) {
+        if (date == null) {
+            return 0;
+        }
+        double ageHours = Math.max(0, now - date.getTime()) / 3_600_000.0;
+        return Math.pow(0.5, ageHours / halfLifeHours);
+    }
+}
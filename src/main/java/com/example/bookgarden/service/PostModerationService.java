@@ -0,0 +1,155 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Post;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+// Kiểm duyệt bài viết ở nền: bài mới được lưu với trạng thái PendingModeration rồi đưa vào pool worker giới hạn.
+// Worker giữ chỗ bài viết bằng findAndModify (moderationRetryAt = hạn giữ chỗ) nên một bài chỉ được xử lý một lần dù
+// được gửi từ createPost hay từ job quét. Lỗi gọi provider được thử lại với backoff lũy thừa; hết lượt thử thì bài chuyển
+// sang Pending để admin duyệt tay. Job quét cũng nhặt lại bài bị bỏ dở khi hàng đợi đầy hoặc ứng dụng khởi động lại.
+@Service
+public class PostModerationService {
+    private static final Logger logger = LoggerFactory.getLogger(PostModerationService.class);
+    public static final String STATUS_PENDING_MODERATION = "PendingModeration";
+    private static final String STATUS_PENDING = "Pending";
+    private static final String STATUS_APPROVED = "Approved";
+    private static final String STATUS_REJECTED = "Rejected";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private ModerationProvider moderationProvider;
+    @Autowired
+    private NotificationService notificationService;
+    @Autowired
+    @Qualifier("moderationExecutor")
+    private ThreadPoolTaskExecutor moderationExecutor;
+    @Value("${client.host}")
+    private String clientHost;
+    @Value("${post.moderation.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${post.moderation.backoff-ms:5000}")
+    private long backoffMillis;
+    @Value("${post.moderation.max-backoff-ms:600000}")
+    private long maxBackoffMillis;
+    @Value("${post.moderation.lease-ms:120000}")
+    private long leaseMillis;
+    @Value("${post.moderation.sweep-batch-size:100}")
+    private int sweepBatchSize;
+
+    // Gửi sau khi transaction (nếu có) commit để worker đọc được bài viết vừa lưu
+    public void submit(ObjectId postId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(postId);
+                }
+            });
+        } else {
+            enqueue(postId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${post.moderation.sweep-interval:30000}")
+    public void sweep() {
+        Query due = Query.query(Criteria.where("status").is(STATUS_PENDING_MODERATION).and("deleted").is(false)
+                .orOperator(Criteria.where("moderationRetryAt").is(null),
+                        Criteria.where("moderationRetryAt").lte(new Date())))
+                .limit(sweepBatchSize);
+        due.fields().include("_id");
+        List<Post> posts = mongoTemplate.find(due, Post.class);
+        for (Post post : posts) {
+            if (!enqueue(post.getId())) {
+                break;
+            }
+        }
+    }
+
+    private boolean enqueue(ObjectId postId) {
+        try {
+            moderationExecutor.execute(() -> moderate(postId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.warn("Moderation queue is full, post {} will be picked up by the next sweep", postId);
+            return false;
+        }
+    }
+
+    private void moderate(ObjectId postId) {
+        Post post = claim(postId);
+        if (post == null) {
+            return;
+        }
+        boolean appropriate;
+        try {
+            appropriate = moderationProvider.isContentAppropriate(post.getContent());
+        } catch (Exception e) {
+            scheduleRetry(post, e);
+            return;
+        }
+
+        String status = appropriate ? STATUS_APPROVED : STATUS_REJECTED;
+        if (!complete(post, status)) {
+            return;
+        }
+        if (appropriate) {
+            notificationService.createNotification(post.getPostedBy().toHexString(), "Bài viết đã được duyệt",
+                    "Bài viết \"" + post.getTitle() + "\" của bạn đã được đăng.", clientHost + "/profile/my-post", "");
+        } else {
+            notificationService.createNotification(post.getPostedBy().toHexString(), "Bài viết bị từ chối",
+                    "Nội dung hoặc hình ảnh bài viết của bạn không phù hợp và đã bị từ chối.", clientHost + "/profile/my-post", "");
+        }
+    }
+
+    private Post claim(ObjectId postId) {
+        Date now = new Date();
+        Query query = Query.query(Criteria.where("_id").is(postId).and("status").is(STATUS_PENDING_MODERATION)
+                .and("deleted").is(false)
+                .orOperator(Criteria.where("moderationRetryAt").is(null),
+                        Criteria.where("moderationRetryAt").lte(now)));
+        Update lease = new Update().set("moderationRetryAt", new Date(now.getTime() + leaseMillis));
+        return mongoTemplate.findAndModify(query, lease, FindAndModifyOptions.options().returnNew(true), Post.class);
+    }
+
+    private boolean complete(Post post, String status) {
+        Query query = Query.query(Criteria.where("_id").is(post.getId()).and("status").is(STATUS_PENDING_MODERATION));
+        Update update = new Update().set("status", status).unset("moderationRetryAt");
+        return mongoTemplate.updateFirst(query, update, Post.class).getModifiedCount() > 0;
+    }
+
+    private void scheduleRetry(Post post, Exception cause) {
+        int attempts = post.getModerationAttempts() + 1;
+        if (attempts >= maxAttempts) {
+            logger.error("Moderation of post {} failed {} times, leaving it for manual review: {}", post.getId(), attempts, cause.getMessage());
+            Query query = Query.query(Criteria.where("_id").is(post.getId()).and("status").is(STATUS_PENDING_MODERATION));
+            mongoTemplate.updateFirst(query, new Update().set("status", STATUS_PENDING)
+                    .set("moderationAttempts", attempts).unset("moderationRetryAt"), Post.class);
+            return;
+        }
+        long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempts - 1, 20));
+        logger.warn("Moderation of post {} failed (attempt {}), retrying in {} ms: {}", post.getId(), attempts, delay, cause.getMessage());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(post.getId())),
+                new Update().set("moderationAttempts", attempts).set("moderationRetryAt", new Date(System.currentTimeMillis() + delay)),
+                Post.class);
+    }
+}
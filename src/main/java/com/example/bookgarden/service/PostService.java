@@ -11,6 +11,9 @@ import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -23,6 +26,9 @@ import java.util.stream.Collectors;
 
 @Service
 public class PostService {
+    private static final String FEED_SORT_HOT = "hot";
+    private static final Sort LATEST_ORDER = Sort.by(Sort.Direction.DESC, "postedDate").and(Sort.by(Sort.Direction.DESC, "_id"));
+    private static final Sort HOT_ORDER = Sort.by(Sort.Direction.DESC, "hotScore").and(Sort.by(Sort.Direction.DESC, "_id"));
     @Autowired
     private PostRepository postRepository;
     @Autowired
@@ -36,13 +42,17 @@ public class PostService {
     @Autowired
     private BookDetailRepository bookDetailRepository;
     @Autowired
-    private OpenAIModerationService openAIModerationService;
+    private PostModerationService postModerationService;
     @Autowired
     private Cloudinary cloudinary;
     @Value("${client.host}")
     private String clientHost;
     @Autowired
     private NotificationService notificationService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Value("${post.feed.max-page-size:50}")
+    private int maxFeedPageSize;
     @Transactional
     public ResponseEntity<GenericResponse> createPost(String userId, PostCreateRequestDTO postCreateRequestDTO, MultipartHttpServletRequest imageRequest) {
         try {
@@ -80,10 +90,9 @@ public class PostService {
                 }
             }
 
-            boolean isContentAppropriate = openAIModerationService.isContentAppropriate(postCreateRequestDTO.getContent());
             boolean isImageAppropriate = postCreateRequestDTO.getRejected_FE() == null || !postCreateRequestDTO.getRejected_FE();
 
-            if (!isContentAppropriate || !isImageAppropriate) {
+            if (!isImageAppropriate) {
                 newPost.setStatus("Rejected");
                 postRepository.save(newPost);
                 notificationService.createNotification(userId, "Bài viết bị từ chối", "Nội dung hoặc hình ảnh bài viết của bạn không phù hợp và đã bị từ chối.", clientHost + "/profile/my-post", "");
@@ -93,16 +102,17 @@ public class PostService {
                         .message("Nội dung hoặc hình ảnh bài viết không phù hợp")
                         .data(null)
                         .build());
-            } else {
-                newPost.setStatus("Approved");
             }
 
+            // Nội dung được kiểm duyệt ở nền, tác giả nhận thông báo khi có kết quả
+            newPost.setStatus(PostModerationService.STATUS_PENDING_MODERATION);
             Post savedPost = postRepository.save(newPost);
+            postModerationService.submit(savedPost.getId());
             PostResponseDTO postResponseDTO = convertPostToDTO(savedPost);
 
-            return ResponseEntity.status(HttpStatus.CREATED).body(GenericResponse.builder()
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(GenericResponse.builder()
                     .success(true)
-                    .message("Bài viết đã được tạo thành công")
+                    .message("Bài viết đã được tạo và đang chờ kiểm duyệt")
                     .data(postResponseDTO)
                     .build());
         } catch (IllegalArgumentException e) {
@@ -250,6 +260,99 @@ public class PostService {
         }
     }
 
+    // Bảng tin phân trang theo cursor trên index (status, deleted, postedDate); sort=hot dùng điểm tính trước của PostHotScoreService.
+    // Mỗi trang chỉ trả số bình luận, tác giả và sách được lấy gộp một lần cho cả trang
+    public ResponseEntity<GenericResponse> getApprovedPostFeed(String cursor, int limit, String sort) {
+        try {
+            boolean hot = FEED_SORT_HOT.equalsIgnoreCase(sort);
+            int pageSize = Math.max(1, Math.min(limit, maxFeedPageSize));
+            Criteria criteria = Criteria.where("status").is("Approved").and("deleted").is(false);
+            if (hot) {
+                criteria.and("hotScore").ne(null);
+            }
+            Query query = Query.query(criteria)
+                    .with(hot ? HOT_ORDER : LATEST_ORDER)
+                    .limit(pageSize + 1);
+            if (cursor != null && !cursor.isBlank()) {
+                query.addCriteria(feedCursorCriteria(cursor, hot));
+            }
+            List<Post> posts = mongoTemplate.find(query, Post.class);
+
+            String nextCursor = null;
+            if (posts.size() > pageSize) {
+                posts = posts.subList(0, pageSize);
+                Post last = posts.get(pageSize - 1);
+                nextCursor = (hot ? String.valueOf(last.getHotScore()) : String.valueOf(last.getPostedDate().getTime()))
+                        + "_" + last.getId().toHexString();
+            }
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy bảng tin bài viết thành công")
+                    .data(new PostPageDTO(convertPostsToFeedDTOs(posts), nextCursor))
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Cursor không hợp lệ")
+                    .data(null)
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy bảng tin bài viết")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
+
+    // Cursor dạng "<postedDate millis hoặc hotScore>_<id>"; lấy các bài đứng sau nó theo thứ tự giảm dần
+    private Criteria feedCursorCriteria(String cursor, boolean hot) {
+        int separator = cursor.lastIndexOf('_');
+        if (separator <= 0 || !ObjectId.isValid(cursor.substring(separator + 1))) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        String field = hot ? "hotScore" : "postedDate";
+        Object value = hot ? (Object) Double.parseDouble(cursor.substring(0, separator))
+                : new Date(Long.parseLong(cursor.substring(0, separator)));
+        ObjectId id = new ObjectId(cursor.substring(separator + 1));
+        return new Criteria().orOperator(
+                Criteria.where(field).lt(value),
+                Criteria.where(field).is(value).and("_id").lt(id));
+    }
+
+    private List<PostResponseDTO> convertPostsToFeedDTOs(List<Post> posts) {
+        ModelMapper modelMapper = new ModelMapper();
+        Set<String> userIds = posts.stream().map(post -> post.getPostedBy().toHexString()).collect(Collectors.toSet());
+        List<ObjectId> bookIds = posts.stream().map(Post::getBook).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+
+        Map<String, User> usersMap = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        Map<ObjectId, Book> booksMap = bookRepository.findAllById(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, book -> book));
+        Map<ObjectId, String> bookImages = bookDetailRepository.findByBookIn(bookIds).stream()
+                .filter(bookDetail -> bookDetail.getImage() != null)
+                .collect(Collectors.toMap(BookDetail::getBook, BookDetail::getImage, (first, second) -> first));
+
+        List<PostResponseDTO> postResponseDTOs = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            PostResponseDTO postResponseDTO = modelMapper.map(post, PostResponseDTO.class);
+            User user = usersMap.get(post.getPostedBy().toHexString());
+            postResponseDTO.setPostedBy(user != null ? modelMapper.map(user, UserPostDTO.class) : null);
+            Book book = post.getBook() != null ? booksMap.get(post.getBook()) : null;
+            if (book != null) {
+                BookPostDTO bookPostDTO = modelMapper.map(book, BookPostDTO.class);
+                bookPostDTO.setImage(bookImages.get(book.getId()));
+                postResponseDTO.setBook(bookPostDTO);
+            } else {
+                postResponseDTO.setBook(null);
+            }
+            postResponseDTO.setComments(null);
+            postResponseDTO.setCommentCount(post.getComments() != null ? post.getComments().size() : 0);
+            postResponseDTOs.add(postResponseDTO);
+        }
+        return postResponseDTOs;
+    }
+
     public ResponseEntity<GenericResponse> getPostById(String postId) {
         try {
             Optional<Post> optionalPost = postRepository.findById(new ObjectId(postId));
@@ -0,0 +1,366 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.FactorVector;
+import com.example.bookgarden.entity.Order;
+import com.example.bookgarden.entity.OrderItem;
+import com.example.bookgarden.entity.SearchHistory;
+import com.example.bookgarden.entity.UserRecommendation;
+import com.example.bookgarden.entity.WishList;
+import com.example.bookgarden.recommendation.CosineSimilarityEngine;
+import com.example.bookgarden.recommendation.ImplicitAlsModel;
+import com.example.bookgarden.recommendation.ImplicitAlsTrainer;
+import com.example.bookgarden.recommendation.MinHashLshIndex;
+import com.example.bookgarden.recommendation.SparseInteractionMatrix;
+import com.example.bookgarden.repository.FactorVectorRepository;
+import com.example.bookgarden.repository.OrderItemRepository;
+import com.example.bookgarden.repository.OrderRepository;
+import com.example.bookgarden.repository.SearchHistoryRepository;
+import com.example.bookgarden.repository.UserRecommendationRepository;
+import com.example.bookgarden.repository.WishListRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+@Service
+public class RecommendationModelBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationModelBuilder.class);
+    public static final String ENGINE_COSINE = "cosine";
+    public static final String ENGINE_ALS = "als";
+    private static final double ORDER_WEIGHT = 1.0;
+    private static final double SEARCH_WEIGHT = 1.0;
+    private static final double WISHLIST_WEIGHT = 0.5;
+
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    @Autowired
+    private SearchHistoryRepository searchHistoryRepository;
+    @Autowired
+    private UserRecommendationRepository userRecommendationRepository;
+    @Autowired
+    private WishListRepository wishListRepository;
+    @Autowired
+    private FactorVectorRepository factorVectorRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private SearchQueryResolver searchQueryResolver;
+    @Autowired
+    @Qualifier("recommendationExecutor")
+    private Executor recommendationExecutor;
+    @Value("${recommendation.engine:cosine}")
+    private String engine;
+    @Value("${recommendation.model.top-n:20}")
+    private int topN;
+    @Value("${recommendation.model.neighbors:10}")
+    private int neighborCount;
+    @Value("${recommendation.model.parallelism:0}")
+    private int parallelism;
+    @Value("${recommendation.lsh.enabled:false}")
+    private boolean lshEnabled;
+    @Value("${recommendation.lsh.bands:16}")
+    private int lshBands;
+    @Value("${recommendation.lsh.rows-per-band:4}")
+    private int lshRowsPerBand;
+    @Value("${recommendation.lsh.exact-rerank:true}")
+    private boolean lshExactRerank;
+    @Value("${recommendation.als.factors:32}")
+    private int alsFactors;
+    @Value("${recommendation.als.iterations:10}")
+    private int alsIterations;
+    @Value("${recommendation.als.regularization:0.1}")
+    private double alsRegularization;
+    @Value("${recommendation.als.alpha:40}")
+    private double alsAlpha;
+    @Value("${recommendation.refresh.coalesce-ms:60000}")
+    private long refreshCoalesceMillis;
+
+    private ForkJoinPool forkJoinPool;
+    private ImplicitAlsTrainer alsTrainer;
+    private volatile ImplicitAlsModel alsModel;
+    // Đã thử nạp vector sách đã lưu nhưng chưa có (chưa huấn luyện lần nào); đặt lại khi huấn luyện xong
+    private volatile boolean alsModelMissing;
+    private MinHashLshIndex lshIndex;
+
+    // Ma trận CSR/CSC của lần build cosine gần nhất; cập nhật từng user chấm điểm hàng mới với ma trận này thay vì dựng lại.
+    // null cho tới khi rebuildAll chạy xong lần đầu sau khởi động
+    private volatile SparseInteractionMatrix matrix;
+    // userId -> thời điểm xếp hàng refresh chưa chạy; các thay đổi tiếp theo của user đó dùng chung lần refresh này
+    private final Map<String, Long> pendingRefreshes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        forkJoinPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        alsTrainer = new ImplicitAlsTrainer(alsFactors, alsIterations, alsRegularization, alsAlpha);
+        lshIndex = new MinHashLshIndex(lshBands, lshRowsPerBand);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        forkJoinPool.shutdown();
+    }
+
+    public String getEngine() {
+        return ENGINE_ALS.equalsIgnoreCase(engine) ? ENGINE_ALS : ENGINE_COSINE;
+    }
+
+    // Đã có ma trận hoặc mô hình để cập nhật từng user chưa; chưa có thì không xếp hàng các lần refresh không làm gì
+    public boolean isReadyForRefresh() {
+        if (ENGINE_ALS.equals(getEngine())) {
+            return alsModel != null || !alsModelMissing;
+        }
+        return matrix != null;
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.model.rebuild-interval:21600000}",
+            initialDelayString = "${recommendation.model.initial-delay:60000}")
+    public synchronized void rebuildAll() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Map<ObjectId, Double>> snapshot = loadAllInteractions();
+        SparseInteractionMatrix matrix = SparseInteractionMatrix.from(snapshot);
+        List<Map<ObjectId, Double>> results;
+        if (ENGINE_ALS.equals(getEngine())) {
+            results = trainAls(matrix);
+        } else if (lshEnabled) {
+            lshIndex.rebuild(snapshot);
+            results = new CosineSimilarityEngine(matrix, forkJoinPool)
+                    .recommendForAll(neighborCount, topN, lshIndex.forMatrix(matrix), lshExactRerank);
+        } else {
+            results = new CosineSimilarityEngine(matrix, forkJoinPool).recommendForAll(neighborCount, topN);
+        }
+
+        List<UserRecommendation> recommendations = new ArrayList<>(results.size());
+        for (int row = 0; row < results.size(); row++) {
+            recommendations.add(toUserRecommendation(matrix.getUserId(row), results.get(row)));
+        }
+        userRecommendationRepository.saveAll(recommendations);
+        this.matrix = ENGINE_ALS.equals(getEngine()) ? null : matrix;
+        logger.info("Rebuilt {} recommendations for {} users, {} books, {} interactions (~{} KB) in {} ms",
+                getEngine(), matrix.getUserCount(), matrix.getBookCount(), matrix.getNonZeroCount(),
+                matrix.estimateMemoryBytes() / 1024, System.currentTimeMillis() - startTime);
+    }
+
+    // Gọi từ luồng request sau khi user tìm kiếm, đổi wishlist hoặc đặt hàng. Gộp các lần gọi liên tiếp của cùng user thành một
+    // refresh ở nền; executor đầy thì việc bị bỏ (rebuildAll sẽ tính lại), nên không bao giờ làm lỗi request. Mục chờ quá
+    // coalesce-ms được coi là đã bị bỏ và cho phép xếp hàng lại
+    public void requestRefresh(String userId) {
+        if (!isReadyForRefresh()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long queuedAt = pendingRefreshes.putIfAbsent(userId, now);
+        if (queuedAt != null) {
+            if (now - queuedAt < refreshCoalesceMillis || !pendingRefreshes.replace(userId, queuedAt, now)) {
+                return;
+            }
+        }
+        recommendationExecutor.execute(() -> {
+            pendingRefreshes.remove(userId);
+            refreshUser(userId);
+        });
+    }
+
+    // Không synchronized với rebuildAll: ma trận và mô hình ALS là ảnh chụp bất biến, refresh không phải chờ một lần build dài
+    private void refreshUser(String userId) {
+        try {
+            Map<ObjectId, Double> userInteractions = loadUserInteractions(userId);
+            if (userInteractions.isEmpty()) {
+                lshIndex.remove(userId);
+                userRecommendationRepository.save(toUserRecommendation(userId, Collections.emptyMap()));
+                return;
+            }
+
+            if (ENGINE_ALS.equals(getEngine())) {
+                refreshAlsUser(userId, userInteractions);
+                return;
+            }
+            SparseInteractionMatrix matrix = this.matrix;
+            if (matrix == null) {
+                // Chưa có ma trận của lần build đầu: giữ kết quả đã lưu, rebuildAll sắp tới sẽ tính lại cho user này
+                return;
+            }
+            int[] candidates = null;
+            if (lshEnabled) {
+                // Chỉ cập nhật bucket của user này trong chỉ mục LSH, không dựng lại toàn bộ chữ ký
+                lshIndex.put(userId, userInteractions.keySet());
+                candidates = lshIndex.candidates(userId).stream()
+                        .mapToInt(matrix::indexOfUser)
+                        .filter(row -> row >= 0)
+                        .toArray();
+            }
+            Map<ObjectId, Double> result = new CosineSimilarityEngine(matrix, forkJoinPool)
+                    .recommendForRow(userInteractions, matrix.indexOfUser(userId), neighborCount, topN, candidates);
+            userRecommendationRepository.save(toUserRecommendation(userId, result));
+        } catch (Exception e) {
+            logger.warn("Failed to refresh recommendations for user {}: {}", userId, e.getMessage());
+        } finally {
+            evictCachedRecommendations(userId);
+        }
+    }
+
+    // Chỉ xóa cache của user có tương tác thay đổi, các user khác giữ nguyên đến khi hết hạn
+    private void evictCachedRecommendations(String userId) {
+        Cache cache = cacheManager.getCache("recommendations");
+        if (cache != null) {
+            cache.evict(userId);
+        }
+    }
+
+    private List<Map<ObjectId, Double>> trainAls(SparseInteractionMatrix matrix) {
+        ImplicitAlsModel model = alsTrainer.train(matrix, forkJoinPool);
+        alsModel = model;
+        alsModelMissing = false;
+        saveFactors(model);
+        return model.recommendForAll(matrix, topN, forkJoinPool);
+    }
+
+    // Giữ nguyên vector sách của lần huấn luyện gần nhất, chỉ giải lại vector của user này
+    private void refreshAlsUser(String userId, Map<ObjectId, Double> userInteractions) {
+        ImplicitAlsModel model = getAlsModel();
+        if (model == null) {
+            return;
+        }
+        float[] userVector = alsTrainer.foldInUser(model, userInteractions);
+        factorVectorRepository.save(toFactorVector(FactorVector.TYPE_USER, userId, userVector, new Date()));
+        userRecommendationRepository.save(toUserRecommendation(userId, model.recommend(userVector, userInteractions.keySet(), topN)));
+    }
+
+    // Sau khi khởi động lại, dựng lại mô hình từ các vector sách đã lưu
+    private ImplicitAlsModel getAlsModel() {
+        if (alsModel == null) {
+            List<FactorVector> bookVectors = factorVectorRepository.findByType(FactorVector.TYPE_BOOK);
+            if (bookVectors.isEmpty()) {
+                alsModelMissing = true;
+                return null;
+            }
+            int factors = bookVectors.get(0).getVector().size();
+            ObjectId[] bookIds = new ObjectId[bookVectors.size()];
+            float[] bookFactors = new float[bookVectors.size() * factors];
+            for (int column = 0; column < bookVectors.size(); column++) {
+                bookIds[column] = new ObjectId(bookVectors.get(column).getRefId());
+                List<Float> vector = bookVectors.get(column).getVector();
+                for (int f = 0; f < factors; f++) {
+                    bookFactors[column * factors + f] = vector.get(f);
+                }
+            }
+            alsModel = new ImplicitAlsModel(factors, new String[0], bookIds, new float[0], bookFactors);
+        }
+        return alsModel;
+    }
+
+    private void saveFactors(ImplicitAlsModel model) {
+        Date trainedAt = new Date();
+        List<FactorVector> vectors = new ArrayList<>(model.getUserCount() + model.getBookCount());
+        for (int row = 0; row < model.getUserCount(); row++) {
+            vectors.add(toFactorVector(FactorVector.TYPE_USER, model.getUserId(row), model.userVector(row), trainedAt));
+        }
+        for (int column = 0; column < model.getBookCount(); column++) {
+            vectors.add(toFactorVector(FactorVector.TYPE_BOOK, model.getBookId(column).toHexString(), model.bookVector(column), trainedAt));
+        }
+        factorVectorRepository.saveAll(vectors);
+        mongoTemplate.remove(Query.query(Criteria.where("trainedAt").lt(trainedAt)), FactorVector.class);
+    }
+
+    private FactorVector toFactorVector(String type, String refId, float[] values, Date trainedAt) {
+        List<Float> vector = new ArrayList<>(values.length);
+        for (float value : values) {
+            vector.add(value);
+        }
+        return new FactorVector(type + ":" + refId, type, refId, vector, trainedAt);
+    }
+
+    private UserRecommendation toUserRecommendation(String userId, Map<ObjectId, Double> scoredBooks) {
+        UserRecommendation recommendation = new UserRecommendation();
+        recommendation.setUserId(userId);
+        recommendation.setModel(getEngine());
+        scoredBooks.forEach((bookId, score) -> {
+            recommendation.getBooks().add(bookId);
+            recommendation.getScores().add(score);
+        });
+        return recommendation;
+    }
+
+    private Map<String, Map<ObjectId, Double>> loadAllInteractions() {
+        Map<ObjectId, ObjectId> bookByOrderItem = orderItemRepository.findAll().stream()
+                .filter(orderItem -> orderItem.getBook() != null)
+                .collect(Collectors.toMap(OrderItem::getId, OrderItem::getBook));
+
+        Map<String, Map<ObjectId, Double>> snapshot = new HashMap<>();
+        for (Order order : orderRepository.findAll()) {
+            if (order.getUser() == null || order.getOrderItems() == null) continue;
+            Map<ObjectId, Double> row = snapshot.computeIfAbsent(order.getUser().toString(), key -> new HashMap<>());
+            for (ObjectId orderItemId : order.getOrderItems()) {
+                ObjectId bookId = bookByOrderItem.get(orderItemId);
+                if (bookId != null) {
+                    row.merge(bookId, ORDER_WEIGHT, Double::sum);
+                }
+            }
+        }
+
+        for (WishList wishList : wishListRepository.findAll()) {
+            if (wishList.getUser() == null || wishList.getBooks() == null || wishList.getBooks().isEmpty()) continue;
+            Map<ObjectId, Double> row = snapshot.computeIfAbsent(wishList.getUser().toString(), key -> new HashMap<>());
+            for (ObjectId bookId : wishList.getBooks()) {
+                row.merge(bookId, WISHLIST_WEIGHT, Double::sum);
+            }
+        }
+
+        for (SearchHistory searchHistory : searchHistoryRepository.findAll()) {
+            if (searchHistory.getUserId() == null) continue;
+            List<ObjectId> bookIds = searchQueryResolver.resolve(searchHistory.getSearchQuery());
+            if (bookIds.isEmpty()) continue;
+            Map<ObjectId, Double> row = snapshot.computeIfAbsent(searchHistory.getUserId(), key -> new HashMap<>());
+            for (ObjectId bookId : bookIds) {
+                row.merge(bookId, SEARCH_WEIGHT, Double::sum);
+            }
+        }
+        snapshot.values().removeIf(Map::isEmpty);
+        return snapshot;
+    }
+
+    private Map<ObjectId, Double> loadUserInteractions(String userId) {
+        Map<ObjectId, Double> row = new HashMap<>();
+        List<ObjectId> orderItemIds = orderRepository.findByUser(new ObjectId(userId)).stream()
+                .filter(order -> order.getOrderItems() != null)
+                .flatMap(order -> order.getOrderItems().stream())
+                .collect(Collectors.toList());
+        if (!orderItemIds.isEmpty()) {
+            for (OrderItem orderItem : orderItemRepository.findByIdIn(orderItemIds)) {
+                if (orderItem.getBook() != null) {
+                    row.merge(orderItem.getBook(), ORDER_WEIGHT, Double::sum);
+                }
+            }
+        }
+        wishListRepository.findByUser(new ObjectId(userId))
+                .filter(wishList -> wishList.getBooks() != null)
+                .ifPresent(wishList -> wishList.getBooks().forEach(bookId -> row.merge(bookId, WISHLIST_WEIGHT, Double::sum)));
+
+        for (SearchHistory searchHistory : searchHistoryRepository.findByUserId(userId)) {
+            for (ObjectId bookId : searchQueryResolver.resolve(searchHistory.getSearchQuery())) {
+                row.merge(bookId, SEARCH_WEIGHT, Double::sum);
+            }
+        }
+        return row;
+    }
+}
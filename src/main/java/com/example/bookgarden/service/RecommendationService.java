@@ -3,26 +3,25 @@ package com.example.bookgarden.service;
 import com.example.bookgarden.dto.BookDTO;
 import com.example.bookgarden.entity.Book;
 import com.example.bookgarden.entity.Order;
-import com.example.bookgarden.entity.SearchHistory;
-import com.example.bookgarden.entity.User;
+import com.example.bookgarden.entity.OrderItem;
+import com.example.bookgarden.entity.UserRecommendation;
 import com.example.bookgarden.repository.BookRepository;
+import com.example.bookgarden.repository.OrderItemRepository;
 import com.example.bookgarden.repository.OrderRepository;
-import com.example.bookgarden.repository.SearchHistoryRepository;
-import com.example.bookgarden.repository.UserRepository;
-import org.apache.commons.math3.linear.BlockRealMatrix;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import com.example.bookgarden.repository.UserRecommendationRepository;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class RecommendationService {
+    private static final int RECOMMENDATION_SIZE = 10;
+
     @Autowired
     private BookService bookService;
 
@@ -30,142 +29,93 @@ public class RecommendationService {
     private OrderRepository orderRepository;
 
     @Autowired
-    private SearchHistoryRepository searchHistoryRepository;
+    private OrderItemRepository orderItemRepository;
 
     @Autowired
     private BookRepository bookRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserRecommendationRepository userRecommendationRepository;
 
-    public List<BookDTO> recommendBooks(String userId) {
-        List<User> allUsers = userRepository.findAll();
-
-        Map<ObjectId, Map<ObjectId, Double>> userBookMatrix = new HashMap<>();
-
-        for (User user : allUsers) {
-            List<Order> userOrders = orderRepository.findByUser(new ObjectId(user.getId()));
-            ObjectId userObjectId = new ObjectId(user.getId());
-            userBookMatrix.putIfAbsent(userObjectId, new HashMap<>());
-            for (Order order : userOrders) {
-                for (ObjectId bookId : order.getOrderItems()) {
-                    userBookMatrix.get(userObjectId).merge(bookId, 1.0, Double::sum);
-                }
-            }
-        }
+    @Autowired
+    private RecommendationModelBuilder recommendationModelBuilder;
 
-        for (User user : allUsers) {
-            List<SearchHistory> searchHistories = searchHistoryRepository.findByUserId(user.getId());
-            ObjectId userObjectId = new ObjectId(user.getId());
-            for (SearchHistory searchHistory : searchHistories) {
-                String searchQuery = searchHistory.getSearchQuery();
-                List<Book> searchResultBooks = bookRepository.findByTitleContainingIgnoreCase(searchQuery);
-                for (Book book : searchResultBooks) {
-                    userBookMatrix.get(userObjectId).merge(book.getId(), 1.0, Double::sum);
-                }
-            }
-        }
+    @Autowired
+    private CoPurchaseService coPurchaseService;
 
-        Map<ObjectId, Integer> userIndexMap = new HashMap<>();
-        Map<ObjectId, Integer> bookIndexMap = new HashMap<>();
-        RealMatrix matrix = createRealMatrix(userBookMatrix, userIndexMap, bookIndexMap);
+    @Cacheable(value = "recommendations", key = "#userId")
+    public List<BookDTO> recommendBooks(String userId) {
+        return computeRecommendations(userId);
+    }
 
-        ObjectId targetUserId = new ObjectId(userId);
-        int targetUserIndex = userIndexMap.getOrDefault(targetUserId, -1);
+    public List<BookDTO> computeRecommendations(String userId) {
+        Map<ObjectId, Book> recommendedBooks = new LinkedHashMap<>();
 
-        List<Book> recommendedBooks = applyCollaborativeFiltering(matrix, targetUserIndex, userBookMatrix, bookIndexMap);
+        Optional<UserRecommendation> optionalRecommendation = userRecommendationRepository.findById(userId);
+        if (optionalRecommendation.isPresent()) {
+            addBooks(recommendedBooks, findBooksInOrder(optionalRecommendation.get().getBooks()));
+        }
+        if (optionalRecommendation.isEmpty()
+                || !recommendationModelBuilder.getEngine().equals(optionalRecommendation.get().getModel())) {
+            // Chưa có kết quả tính trước của mô hình đang cấu hình cho user này, tính nền trong lúc dùng kết quả hiện có.
+            // Khi chưa có mô hình (chưa huấn luyện ALS lần nào) requestRefresh bỏ qua và chờ rebuildAll
+            recommendationModelBuilder.requestRefresh(userId);
+        }
 
-        if (recommendedBooks.size() < 10) {
-            int remainingCount = 10 - recommendedBooks.size();
-            List<Book> additionalBooks = getAdditionalBooks(userId, remainingCount);
-            recommendedBooks.addAll(additionalBooks);
+        if (recommendedBooks.size() < RECOMMENDATION_SIZE) {
+            addBooks(recommendedBooks, getAlsoBoughtBooks(userId));
+        }
+        if (recommendedBooks.size() < RECOMMENDATION_SIZE) {
+            addBooks(recommendedBooks, getAdditionalBooks(userId, RECOMMENDATION_SIZE - recommendedBooks.size()));
         }
 
-        List<BookDTO> bookDTOs = recommendedBooks.stream()
+        return recommendedBooks.values().stream()
+                .limit(RECOMMENDATION_SIZE)
                 .map(bookService::convertToBookDTO)
                 .collect(Collectors.toList());
-
-        return bookDTOs;
     }
 
-    private RealMatrix createRealMatrix(Map<ObjectId, Map<ObjectId, Double>> userBookMatrix, Map<ObjectId, Integer> userIndexMap, Map<ObjectId, Integer> bookIndexMap) {
-        int userCount = userBookMatrix.size();
-        Set<ObjectId> bookIdsSet = userBookMatrix.values().stream().flatMap(m -> m.keySet().stream()).collect(Collectors.toSet());
-        int bookCount = bookIdsSet.size();
-
-        RealMatrix matrix = new BlockRealMatrix(userCount, bookCount);
-
-        int userIndex = 0;
-        for (ObjectId userId : userBookMatrix.keySet()) {
-            userIndexMap.put(userId, userIndex++);
-        }
-
-        int bookIndex = 0;
-        for (ObjectId bookId : bookIdsSet) {
-            bookIndexMap.put(bookId, bookIndex++);
-        }
-
-        for (Map.Entry<ObjectId, Map<ObjectId, Double>> userEntry : userBookMatrix.entrySet()) {
-            int rowIndex = userIndexMap.get(userEntry.getKey());
-            for (Map.Entry<ObjectId, Double> bookEntry : userEntry.getValue().entrySet()) {
-                int colIndex = bookIndexMap.get(bookEntry.getKey());
-                matrix.setEntry(rowIndex, colIndex, bookEntry.getValue());
+    private void addBooks(Map<ObjectId, Book> target, List<Book> books) {
+        for (Book book : books) {
+            if (target.size() >= RECOMMENDATION_SIZE) break;
+            if (!book.isDeleted()) {
+                target.putIfAbsent(book.getId(), book);
             }
         }
-        return matrix;
     }
 
-    private List<Book> applyCollaborativeFiltering(RealMatrix matrix, int targetUserIndex, Map<ObjectId, Map<ObjectId, Double>> userBookMatrix, Map<ObjectId, Integer> bookIndexMap) {
-        PearsonsCorrelation correlation = new PearsonsCorrelation(matrix.transpose());
-        RealMatrix similarityMatrix = correlation.getCorrelationMatrix();
-
-        double[] targetUserSimilarities = similarityMatrix.getRow(targetUserIndex);
-        List<Integer> similarUserIndices = findTopNSimilarUsers(targetUserSimilarities, 10);
-
-        Map<ObjectId, Double> recommendedBookScores = new HashMap<>();
-        for (int similarUserIndex : similarUserIndices) {
-            if (similarUserIndex == targetUserIndex) continue;
-            for (int col = 0; col < matrix.getColumnDimension(); col++) {
-                double value = matrix.getEntry(similarUserIndex, col);
-                if (value > 0) {
-                    ObjectId bookId = getKeyFromValue(bookIndexMap, col);
-                    recommendedBookScores.merge(bookId, value, Double::sum);
-                }
-            }
+    private List<Book> findBooksInOrder(List<ObjectId> bookIds) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return new ArrayList<>();
         }
-
-        List<Map.Entry<ObjectId, Double>> sortedRecommendations = recommendedBookScores.entrySet()
-                .stream()
-                .sorted(Map.Entry.<ObjectId, Double>comparingByValue().reversed())
-                .limit(10)
+        Map<ObjectId, Book> booksById = bookRepository.findByIdIn(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        return bookIds.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
-
-        List<Book> recommendedBooks = new ArrayList<>();
-        for (Map.Entry<ObjectId, Double> entry : sortedRecommendations) {
-            bookRepository.findById(entry.getKey()).ifPresent(recommendedBooks::add);
-        }
-
-        return recommendedBooks;
     }
 
-    private List<Integer> findTopNSimilarUsers(double[] similarities, int n) {
-        List<Integer> similarUserIndices = new ArrayList<>();
-        for (int i = 0; i < similarities.length; i++) {
-            similarUserIndices.add(i);
+    private List<ObjectId> findOrderedBookIds(List<Order> orders) {
+        List<ObjectId> orderItemIds = orders.stream()
+                .filter(order -> order.getOrderItems() != null)
+                .flatMap(order -> order.getOrderItems().stream())
+                .collect(Collectors.toList());
+        if (orderItemIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        return similarUserIndices.stream()
-                .sorted(Comparator.comparingDouble(i -> -similarities[i]))
-                .limit(n)
+        return orderItemRepository.findByIdIn(orderItemIds).stream()
+                .map(OrderItem::getBook)
+                .filter(Objects::nonNull)
+                .distinct()
                 .collect(Collectors.toList());
     }
 
-    private <T, E> T getKeyFromValue(Map<T, E> map, E value) {
-        for (Map.Entry<T, E> entry : map.entrySet()) {
-            if (value.equals(entry.getValue())) {
-                return entry.getKey();
-            }
-        }
-        return null;
+    // Sách thường được mua cùng với những sách user đã mua
+    private List<Book> getAlsoBoughtBooks(String userId) {
+        List<ObjectId> orderedBookIds = findOrderedBookIds(orderRepository.findByUser(new ObjectId(userId)));
+        Map<ObjectId, Double> candidates = coPurchaseService.findCandidates(orderedBookIds, RECOMMENDATION_SIZE);
+        return findBooksInOrder(new ArrayList<>(candidates.keySet()));
     }
 
     private List<Book> getAdditionalBooks(String userId, int limit) {
@@ -185,14 +135,7 @@ public class RecommendationService {
 
     private List<Book> getNewBooks(int limit) {
         List<Order> recentOrders = orderRepository.findTop10ByOrderByOrderDateDesc();
-        Set<ObjectId> recentBookIds = recentOrders.stream()
-                .flatMap(order -> order.getOrderItems().stream())
-                .collect(Collectors.toSet());
-        List<Book> recentBooks = new ArrayList<>();
-        for (ObjectId bookId : recentBookIds) {
-            bookRepository.findById(bookId).ifPresent(recentBooks::add);
-        }
-        return recentBooks.stream().limit(limit).collect(Collectors.toList());
+        return findBooksInOrder(findOrderedBookIds(recentOrders)).stream().limit(limit).collect(Collectors.toList());
     }
 
     private List<Book> getBestsellingBooks(int limit) {
@@ -204,25 +147,20 @@ public class RecommendationService {
 //    }
 
     private List<Book> getBooksByUserPreferences(String userId, int limit) {
-        ObjectId userObjectId = new ObjectId(userId);
-        List<Order> userOrders = orderRepository.findByUser(userObjectId);
+        List<Book> orderedBooks = findBooksInOrder(findOrderedBookIds(orderRepository.findByUser(new ObjectId(userId))));
         Set<ObjectId> preferredCategoryIds = new HashSet<>();
         Set<ObjectId> preferredAuthorIds = new HashSet<>();
-        for (Order order : userOrders) {
-            for (ObjectId bookId : order.getOrderItems()) {
-                bookRepository.findById(bookId).ifPresent(book -> {
-                    preferredCategoryIds.addAll(book.getCategories());
-                    preferredAuthorIds.addAll(book.getAuthors());
-                });
-            }
+        for (Book book : orderedBooks) {
+            if (book.getCategories() != null) preferredCategoryIds.addAll(book.getCategories());
+            if (book.getAuthors() != null) preferredAuthorIds.addAll(book.getAuthors());
         }
-
-        List<Book> preferredBooks = new ArrayList<>();
-        for (ObjectId categoryId : preferredCategoryIds) {
-            preferredBooks.addAll(bookRepository.findByCategoriesContains(categoryId));
+        if (preferredCategoryIds.isEmpty() && preferredAuthorIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        for (ObjectId authorId : preferredAuthorIds) {
-            preferredBooks.addAll(bookRepository.findByAuthorsContains(authorId));
+
+        List<Book> preferredBooks = new ArrayList<>(bookRepository.findRelatedBooksByCategories(new ArrayList<>(preferredCategoryIds)));
+        if (preferredBooks.size() < limit) {
+            preferredBooks.addAll(bookRepository.findRelatedBooksByAuthors(new ArrayList<>(preferredAuthorIds)));
         }
         return preferredBooks.stream().limit(limit).collect(Collectors.toList());
     }
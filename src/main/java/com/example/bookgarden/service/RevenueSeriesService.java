@@ -0,0 +1,69 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.constant.TimeGranularity;
+import com.example.bookgarden.dto.RevenuePointDTO;
+import com.example.bookgarden.dto.RevenueSeriesDTO;
+import com.example.bookgarden.entity.Order;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+@Service
+public class RevenueSeriesService {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Gom doanh thu theo từng mốc thời gian bằng $dateTrunc, các mốc không có đơn hàng được điền 0
+    @Cacheable(value = "revenueSeriesCache", key = "#from.toString() + '_' + #to.toString() + '_' + #granularity.name()")
+    public RevenueSeriesDTO getRevenueSeries(LocalDate from, LocalDate to, TimeGranularity granularity) {
+        ZoneId zoneId = ZoneId.systemDefault();
+        Date start = Date.from(from.atStartOfDay(zoneId).toInstant());
+        Date end = Date.from(to.plusDays(1).atStartOfDay(zoneId).toInstant());
+
+        DateOperators.DateTrunc period = DateOperators.DateTrunc.truncateValueOf("orderDate")
+                .to(granularity.getUnit())
+                .withTimezone(DateOperators.Timezone.valueOf(zoneId.getId()));
+        if (granularity == TimeGranularity.WEEK) {
+            period = period.startOfWeek(DayOfWeek.MONDAY);
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("paymentStatus").is("PAID").and("orderDate").gte(start).lt(end)),
+                Aggregation.project("totalAmount").and(period).as("period"),
+                Aggregation.group("period").sum("totalAmount").as("revenue").count().as("orderCount"),
+                Aggregation.sort(Sort.Direction.ASC, "_id"));
+
+        Map<LocalDate, RevenuePointDTO> pointsByPeriod = new HashMap<>();
+        for (Document document : mongoTemplate.aggregate(aggregation, Order.class, Document.class)) {
+            LocalDate periodDate = document.getDate("_id").toInstant().atZone(zoneId).toLocalDate();
+            Number revenue = document.get("revenue", Number.class);
+            Number orderCount = document.get("orderCount", Number.class);
+            pointsByPeriod.put(periodDate, new RevenuePointDTO(periodDate,
+                    revenue != null ? revenue.doubleValue() : 0.0,
+                    orderCount != null ? orderCount.longValue() : 0L));
+        }
+
+        List<RevenuePointDTO> points = new ArrayList<>();
+        double totalRevenue = 0.0;
+        long totalOrders = 0;
+        for (LocalDate bucket = granularity.truncate(from); !bucket.isAfter(to); bucket = bucket.plus(1, granularity.getChronoUnit())) {
+            RevenuePointDTO point = pointsByPeriod.getOrDefault(bucket, new RevenuePointDTO(bucket, 0.0, 0L));
+            totalRevenue += point.getRevenue();
+            totalOrders += point.getOrderCount();
+            points.add(point);
+        }
+
+        return new RevenueSeriesDTO(from, to, granularity.name(), totalRevenue, totalOrders, points);
+    }
+}
@@ -19,6 +19,8 @@ public class SearchHistoryService {
 
     @Autowired
     private SearchHistoryRepository searchHistoryRepository;
+    @Autowired
+    private RecommendationModelBuilder recommendationModelBuilder;
     @CacheEvict(value = "searchHistoryCache", key = "#userId")
     public SearchHistory saveSearchHistory(String userId, String searchQuery) {
         Optional<SearchHistory> existingSearchHistory = searchHistoryRepository.findByUserIdAndSearchQuery(userId, searchQuery);
@@ -29,7 +31,11 @@ public class SearchHistoryService {
         } else {
             searchHistory = new SearchHistory(userId, searchQuery);
         }
-        return searchHistoryRepository.save(searchHistory);
+        SearchHistory savedSearchHistory = searchHistoryRepository.save(searchHistory);
+        if (existingSearchHistory.isEmpty()) {
+            recommendationModelBuilder.requestRefresh(userId);
+        }
+        return savedSearchHistory;
     }
     @Cacheable(value = "searchHistoryCache", key = "#userId")
     public List<String> getSearchHistoryByUserId(String userId) {
@@ -43,6 +49,7 @@ public class SearchHistoryService {
         Optional<SearchHistory> searchHistory = searchHistoryRepository.findByUserIdAndSearchQuery(userId, searchQuery);
         if (searchHistory != null) {
             searchHistoryRepository.delete(searchHistory.get());
+            recommendationModelBuilder.requestRefresh(userId);
         }else {
             throw new ItemNotFoundException("Không tìm thấy mục lịch sử tìm kiếm với query: " + searchQuery);
         }
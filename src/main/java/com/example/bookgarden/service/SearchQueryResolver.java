@@ -0,0 +1,124 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Book;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Ánh xạ truy vấn tìm kiếm (đã chuẩn hóa) sang danh sách id sách có tiêu đề chứa truy vấn đó,
+// dùng chung cho mọi user; tra cứu qua chỉ mục trigram tiêu đề trong bộ nhớ thay vì quét regex trên MongoDB
+@Service
+public class SearchQueryResolver {
+    private static final int GRAM_SIZE = 3;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Mỗi lần đổi tiêu đề tạo trạng thái mới (version + 1, chưa có chỉ mục); chỉ mục dựng xong chỉ được gắn bằng CAS
+    // vào đúng trạng thái lúc bắt đầu dựng, nên bản dựng từ dữ liệu cũ không ghi đè được lần đổi tiêu đề xảy ra giữa chừng
+    private final AtomicReference<IndexState> indexState = new AtomicReference<>(new IndexState(0, null));
+
+    private record IndexState(long version, TitleIndex index) {
+    }
+
+    public static String normalize(String searchQuery) {
+        return searchQuery == null ? "" : searchQuery.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Cacheable(value = "searchQueryBooksCache", key = "T(com.example.bookgarden.service.SearchQueryResolver).normalize(#searchQuery)")
+    public List<ObjectId> resolve(String searchQuery) {
+        String query = normalize(searchQuery);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return getTitleIndex().find(query);
+    }
+
+    // Gọi khi thêm sách hoặc đổi tiêu đề; các thay đổi khác của sách không ảnh hưởng kết quả tra cứu
+    @CacheEvict(value = "searchQueryBooksCache", allEntries = true)
+    public void onTitleChanged() {
+        indexState.updateAndGet(state -> new IndexState(state.version() + 1, null));
+    }
+
+    private TitleIndex getTitleIndex() {
+        IndexState state = indexState.get();
+        if (state.index() != null) {
+            return state.index();
+        }
+        synchronized (this) {
+            while (true) {
+                state = indexState.get();
+                if (state.index() != null) {
+                    return state.index();
+                }
+                Query query = new Query();
+                query.fields().include("title");
+                TitleIndex index = new TitleIndex(mongoTemplate.find(query, Book.class));
+                if (indexState.compareAndSet(state, new IndexState(state.version(), index))) {
+                    return index;
+                }
+            }
+        }
+    }
+
+    private static class TitleIndex {
+        private final ObjectId[] bookIds;
+        private final String[] titles;
+        private final Map<String, int[]> postings = new HashMap<>();
+
+        TitleIndex(List<Book> books) {
+            bookIds = new ObjectId[books.size()];
+            titles = new String[books.size()];
+            Map<String, List<Integer>> postingLists = new HashMap<>();
+            for (int i = 0; i < books.size(); i++) {
+                bookIds[i] = books.get(i).getId();
+                titles[i] = normalize(books.get(i).getTitle());
+                for (String gram : grams(titles[i])) {
+                    postingLists.computeIfAbsent(gram, key -> new ArrayList<>()).add(i);
+                }
+            }
+            postingLists.forEach((gram, list) -> postings.put(gram, list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        // Lấy danh sách ngắn nhất trong các trigram của truy vấn làm ứng viên rồi kiểm tra chứa chuỗi
+        List<ObjectId> find(String query) {
+            int[] candidates = null;
+            for (String gram : grams(query)) {
+                int[] posting = postings.get(gram);
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                if (candidates == null || posting.length < candidates.length) {
+                    candidates = posting;
+                }
+            }
+
+            List<ObjectId> matches = new ArrayList<>();
+            if (candidates == null) {
+                for (int i = 0; i < titles.length; i++) {
+                    if (titles[i].contains(query)) matches.add(bookIds[i]);
+                }
+            } else {
+                for (int i : candidates) {
+                    if (titles[i].contains(query)) matches.add(bookIds[i]);
+                }
+            }
+            return matches;
+        }
+
+        private static Set<String> grams(String text) {
+            Set<String> grams = new HashSet<>();
+            for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+                grams.add(text.substring(i, i + GRAM_SIZE));
+            }
+            return grams;
+        }
+    }
+}
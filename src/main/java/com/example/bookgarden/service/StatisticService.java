@@ -1,13 +1,16 @@
 package com.example.bookgarden.service;
 
+import com.example.bookgarden.constant.TimeGranularity;
 import com.example.bookgarden.dto.GenericResponse;
 import com.example.bookgarden.dto.PostResponseDTO;
+import com.example.bookgarden.dto.RevenueSeriesDTO;
 import com.example.bookgarden.dto.StatisticDTO;
 import com.example.bookgarden.entity.Author;
 import com.example.bookgarden.entity.Order;
 import com.example.bookgarden.entity.User;
 import com.example.bookgarden.repository.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -32,6 +35,12 @@ public class StatisticService {
     private CommentRepository commentRepository;
     @Autowired
     private OrderRepository orderRepository;
+    @Autowired
+    private RevenueSeriesService revenueSeriesService;
+    @Value("${statistics.revenue.max-points:400}")
+    private int maxRevenuePoints;
+    @Value("${statistics.revenue.default-range-days:30}")
+    private int defaultRangeDays;
 
     public ResponseEntity<GenericResponse> getStatistics(String userId) {
         try {
@@ -111,4 +120,65 @@ public class StatisticService {
                     .build());
         }
     }
+
+    public ResponseEntity<GenericResponse> getRevenueSeries(String userId, LocalDate from, LocalDate to, String granularity) {
+        try {
+            Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Người dùng không tồn tại")
+                        .data(null)
+                        .build());
+            }
+            if (!"Admin".equals(optionalUser.get().getRole())) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Bạn không có quyền truy cập thống kê")
+                        .data(null)
+                        .build());
+            }
+
+            LocalDate toDate = to != null ? to : LocalDate.now();
+            LocalDate fromDate = from != null ? from : toDate.minusDays(defaultRangeDays - 1L);
+            if (fromDate.isAfter(toDate)) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Ngày bắt đầu phải trước ngày kết thúc")
+                        .data(null)
+                        .build());
+            }
+
+            TimeGranularity requestedGranularity;
+            try {
+                requestedGranularity = TimeGranularity.fromString(granularity);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Độ chi tiết thống kê không hợp lệ")
+                        .data(e.getMessage())
+                        .build());
+            }
+
+            // Tự động giảm độ chi tiết để biểu đồ không vượt quá số điểm cho phép
+            TimeGranularity resolvedGranularity = requestedGranularity != null ? requestedGranularity : TimeGranularity.DAY;
+            while (resolvedGranularity.countBuckets(fromDate, toDate) > maxRevenuePoints
+                    && resolvedGranularity != resolvedGranularity.coarser()) {
+                resolvedGranularity = resolvedGranularity.coarser();
+            }
+
+            RevenueSeriesDTO revenueSeriesDTO = revenueSeriesService.getRevenueSeries(fromDate, toDate, resolvedGranularity);
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Thông tin doanh thu theo thời gian")
+                    .data(revenueSeriesDTO)
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy thông tin doanh thu theo thời gian")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.dto.GenericResponse;
+import com.example.bookgarden.entity.User;
+import com.example.bookgarden.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Số phiên WebSocket đang mở, số phiên bị đóng do client đọc chậm và độ dài hàng đợi của các kênh broker
+@Service
+public class WebSocketStatsService {
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    @Qualifier("subProtocolWebSocketHandler")
+    private WebSocketHandler subProtocolWebSocketHandler;
+    @Autowired
+    @Qualifier("clientInboundChannelExecutor")
+    private ThreadPoolTaskExecutor clientInboundChannelExecutor;
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ThreadPoolTaskExecutor clientOutboundChannelExecutor;
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+
+    public ResponseEntity<GenericResponse> getStats(String userId) {
+        try {
+            Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty() || !"Admin".equals(optionalUser.get().getRole())) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(GenericResponse.builder()
+                        .success(false)
+                        .message("Bạn không có quyền truy cập thông tin này")
+                        .data(null)
+                        .build());
+            }
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy thông số WebSocket thành công")
+                    .data(collectStats())
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy thông số WebSocket")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
+
+    public Map<String, Object> collectStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (subProtocolWebSocketHandler instanceof SubProtocolWebSocketHandler handler) {
+            SubProtocolWebSocketHandler.Stats sessionStats = handler.getStats();
+            stats.put("totalSessions", sessionStats.getTotalSessions());
+            stats.put("webSocketSessions", sessionStats.getWebSocketSessions());
+            stats.put("sockJsStreamingSessions", sessionStats.getHttpStreamingSessions());
+            stats.put("sockJsPollingSessions", sessionStats.getHttpPollingSessions());
+            stats.put("slowConsumerDisconnects", sessionStats.getLimitExceededSessions());
+            stats.put("noMessagesReceivedSessions", sessionStats.getNoMessagesReceivedSessions());
+            stats.put("transportErrorSessions", sessionStats.getTransportErrorSessions());
+        }
+        stats.put("inbound", executorStats(clientInboundChannelExecutor));
+        stats.put("outbound", executorStats(clientOutboundChannelExecutor));
+        stats.put("sseConnections", notificationStreamService.getConnectionCount());
+        return stats;
+    }
+
+    private Map<String, Object> executorStats(ThreadPoolTaskExecutor executor) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("queueDepth", executor.getThreadPoolExecutor().getQueue().size());
+        stats.put("completedTasks", executor.getThreadPoolExecutor().getCompletedTaskCount());
+        return stats;
+    }
+}
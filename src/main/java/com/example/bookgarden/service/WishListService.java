@@ -2,25 +2,37 @@ package com.example.bookgarden.service;
 
 import com.example.bookgarden.dto.BookDTO;
 import com.example.bookgarden.dto.GenericResponse;
+import com.example.bookgarden.dto.PageResponse;
 import com.example.bookgarden.entity.Book;
 import com.example.bookgarden.entity.User;
 import com.example.bookgarden.entity.WishList;
 import com.example.bookgarden.repository.BookRepository;
 import com.example.bookgarden.repository.UserRepository;
 import com.example.bookgarden.repository.WishListRepository;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class WishListService {
+    private static final String BOOK_IDS_CACHE = "wishListBookIdsCache";
+
     @Autowired
     private WishListRepository wishListRepository;
 
@@ -31,6 +43,12 @@ public class WishListService {
     private BookService bookService;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private RecommendationModelBuilder recommendationModelBuilder;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private CacheManager cacheManager;
 
     public ResponseEntity<GenericResponse> addToWishList(String userId, String bookId) {
         try {
@@ -63,36 +81,20 @@ public class WishListService {
                         .build());
             }
 
-            WishList wishList = wishListRepository.findByUser(new ObjectId(userId))
-                    .orElseGet(() -> {
-                        WishList newWishList = new WishList();
-                        newWishList.setUser(new ObjectId(userId));
-                        return wishListRepository.save(newWishList);
-                    });
-
-            if (wishList.getBooks().contains(bookObjectId)) {
+            WishList wishList = addBook(userId, bookObjectId);
+            if (wishList == null) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(GenericResponse.builder()
                         .success(false)
                         .message("Sách đã tồn tại trong danh sách yêu thích")
                         .data(null)
                         .build());
             }
-
-            wishList.getBooks().add(bookObjectId);
-            wishListRepository.save(wishList);
-
-            List<BookDTO> wishlistResponse = wishList.getBooks().stream()
-                    .map(bookItemId -> {
-                        Optional<Book> bookOptional = bookRepository.findById(bookItemId);
-                        return bookOptional.map(bookService::convertToBookDTO).orElse(null);
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+            recommendationModelBuilder.requestRefresh(userId);
 
             return ResponseEntity.ok(GenericResponse.builder()
                     .success(true)
                     .message("Đã thêm sách vào danh sách mong muốn thành công")
-                    .data(wishlistResponse)
+                    .data(convertToBookDTOs(wishList.getBooks()))
                     .build());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
@@ -103,31 +105,53 @@ public class WishListService {
         }
     }
 
-    public ResponseEntity<GenericResponse> getWishList(String userId) {
+    // $addToSet chỉ khi sách chưa có trong danh sách; trả về null nếu sách đã tồn tại
+    private WishList addBook(String userId, ObjectId bookId) {
+        Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)).and("books").ne(bookId));
+        Update update = new Update().addToSet("books", bookId);
+        WishList wishList = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), WishList.class);
+        if (wishList == null) {
+            if (wishListRepository.existsByUser(new ObjectId(userId))) {
+                return null;
+            }
+            getOrCreateWishList(userId);
+            wishList = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), WishList.class);
+        }
+        if (wishList != null) {
+            evictBookIds(userId);
+        }
+        return wishList;
+    }
+
+    // page/size tính từ 1 như API đơn hàng; không truyền page thì trả về toàn bộ danh sách
+    public ResponseEntity<GenericResponse> getWishList(String userId, Integer page, int size) {
         try {
-            Optional<WishList> optionalWishList = getOrCreateWishList(userId);
-            if (optionalWishList.isPresent()) {
-                WishList wishList = optionalWishList.get();
-                List<BookDTO> wishlistResponse = wishList.getBooks().stream()
-                        .map(bookItemId -> {
-                            Optional<Book> optionalBook = bookRepository.findById(bookItemId);
-                            return optionalBook.map(bookService::convertToBookDTO).orElse(null);
-                        })
-                        .filter(bookDTO -> bookDTO != null)
-                        .collect(Collectors.toList());
-
-                return ResponseEntity.ok(GenericResponse.builder()
-                        .success(true)
-                        .message("Lấy thông tin danh sách mong muốn thành công")
-                        .data(wishlistResponse)
-                        .build());
+            Object data;
+            if (page == null) {
+                Optional<WishList> optionalWishList = getOrCreateWishList(userId);
+                if (optionalWishList.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
+                            .success(false)
+                            .message("Không tìm thấy danh sách mong muốn của user")
+                            .data(null)
+                            .build());
+                }
+                data = convertToBookDTOs(optionalWishList.get().getBooks());
             } else {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
-                        .success(false)
-                        .message("Không tìm thấy danh sách mong muốn của user")
-                        .data(null)
-                        .build());
+                PageResponse<BookDTO> response = getWishListPage(userId, page, size);
+                if (response == null) {
+                    getOrCreateWishList(userId);
+                    response = new PageResponse<>();
+                    response.setContent(new ArrayList<>());
+                }
+                data = response;
             }
+
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy thông tin danh sách mong muốn thành công")
+                    .data(data)
+                    .build());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
                     .success(false)
@@ -137,44 +161,53 @@ public class WishListService {
         }
     }
 
+    // Chỉ đọc đúng trang id bằng $slice và đếm tổng bằng $size ngay trong MongoDB; null nếu user chưa có danh sách
+    private PageResponse<BookDTO> getWishListPage(String userId, int page, int size) {
+        int pageSize = Math.max(1, size);
+        int from = Math.max(0, page - 1) * pageSize;
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("user").is(new ObjectId(userId))),
+                Aggregation.project()
+                        .and(ArrayOperators.Slice.sliceArrayOf("books").offset(from).itemCount(pageSize)).as("books")
+                        .and(ArrayOperators.Size.lengthOfArray(ConditionalOperators.ifNull("books").then(Collections.emptyList()))).as("total"));
+        Document result = mongoTemplate.aggregate(aggregation, WishList.class, Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return null;
+        }
+        List<ObjectId> bookIds = result.getList("books", ObjectId.class, Collections.emptyList());
+        int total = result.getInteger("total", 0);
+        PageResponse<BookDTO> response = new PageResponse<>();
+        response.setContent(convertToBookDTOs(bookIds));
+        response.setTotalPages((total + pageSize - 1) / pageSize);
+        response.setTotalElements(total);
+        return response;
+    }
+
     public ResponseEntity<GenericResponse> removeFromWishList(String userId, String bookId) {
         try {
-            Optional<WishList> optionalWishList = getOrCreateWishList(userId);
-            if (optionalWishList.isPresent()) {
-                WishList wishList = optionalWishList.get();
-                Optional<Book> optionalBook = bookRepository.findById(new ObjectId(bookId));
-                if (optionalBook.isEmpty()){
-                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
-                            .success(false)
-                            .message("Không tìm thấy sách")
-                            .data(null)
-                            .build());
-                }
-                Book book = optionalBook.get();
-                wishList.getBooks().remove(book.getId());
-
-                wishListRepository.save(wishList);
-
-                List<BookDTO> wishlistResponse = wishList.getBooks().stream()
-                        .map(bookItemId -> {
-                            Optional<Book> optionalBookItem = bookRepository.findById(bookItemId);
-                            return optionalBookItem.map(bookService::convertToBookDTO).orElse(null);
-                        })
-                        .filter(bookDTO -> bookDTO != null)
-                        .collect(Collectors.toList());
-
-                return ResponseEntity.ok(GenericResponse.builder()
-                        .success(true)
-                        .message("Lấy thông tin danh sách mong muốn thành công")
-                        .data(wishlistResponse)
-                        .build());
-            } else {
+            ObjectId bookObjectId = new ObjectId(bookId);
+            if (!bookRepository.existsById(bookObjectId)) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(GenericResponse.builder()
                         .success(false)
-                        .message("Không tìm thấy danh sách mong muốn của user")
+                        .message("Không tìm thấy sách")
                         .data(null)
                         .build());
             }
+
+            Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)));
+            WishList wishList = mongoTemplate.findAndModify(query, new Update().pull("books", bookObjectId),
+                    FindAndModifyOptions.options().returnNew(true), WishList.class);
+            if (wishList == null) {
+                wishList = getOrCreateWishList(userId).orElseThrow();
+            }
+            evictBookIds(userId);
+            recommendationModelBuilder.requestRefresh(userId);
+
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy thông tin danh sách mong muốn thành công")
+                    .data(convertToBookDTOs(wishList.getBooks()))
+                    .build());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
                     .success(false)
@@ -184,6 +217,93 @@ public class WishListService {
         }
     }
 
+    // Id các sách user đã thích, giữ trong cache để trang danh mục tô trạng thái trái tim mà không cần truy vấn thêm
+    public ResponseEntity<GenericResponse> getWishListBookIds(String userId) {
+        try {
+            return ResponseEntity.ok(GenericResponse.builder()
+                    .success(true)
+                    .message("Lấy danh sách id sách yêu thích thành công")
+                    .data(getWishListedBookIds(userId))
+                    .build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(GenericResponse.builder()
+                    .success(false)
+                    .message("Lỗi khi lấy danh sách id sách yêu thích")
+                    .data(e.getMessage())
+                    .build());
+        }
+    }
+
+    // Gắn cờ wishListed cho các BookDTO trong response danh mục từ tập id đã cache của user, không truy vấn thêm sách nào
+    public ResponseEntity<GenericResponse> markWishListed(String userId, ResponseEntity<GenericResponse> response) {
+        GenericResponse body = response.getBody();
+        if (userId == null || body == null || !(body.getData() instanceof List<?> items)) {
+            return response;
+        }
+        Set<String> wishListedIds = getWishListedBookIds(userId);
+        List<Object> marked = new ArrayList<>(items.size());
+        for (Object item : items) {
+            marked.add(item instanceof BookDTO bookDTO ? bookDTO.withWishListed(wishListedIds.contains(bookDTO.get_id())) : item);
+        }
+        return ResponseEntity.status(response.getStatusCode()).body(GenericResponse.builder()
+                .success(body.isSuccess())
+                .message(body.getMessage())
+                .data(marked)
+                .build());
+    }
+
+    // Cache miss thì đọc từ DB rồi putIfAbsent; mỗi thao tác ghi xóa mục cache nên lần đọc sau nạp lại tập mới nhất
+    @SuppressWarnings("unchecked")
+    public Set<String> getWishListedBookIds(String userId) {
+        Cache cache = cacheManager.getCache(BOOK_IDS_CACHE);
+        Set<String> cached = cache != null ? cache.get(userId, Set.class) : null;
+        if (cached != null) {
+            return cached;
+        }
+        Query query = Query.query(Criteria.where("user").is(new ObjectId(userId)));
+        query.fields().include("books");
+        WishList wishList = mongoTemplate.findOne(query, WishList.class);
+        Set<String> ids = toIdSet(wishList != null ? wishList.getBooks() : null);
+        if (cache != null) {
+            Cache.ValueWrapper existing = cache.putIfAbsent(userId, ids);
+            if (existing != null && existing.get() != null) {
+                return (Set<String>) existing.get();
+            }
+        }
+        return ids;
+    }
+
+    // Xóa thay vì put kết quả findAndModify: hai thao tác ghi đồng thời có thể trả về theo thứ tự ngược và để lại tập cũ trong cache
+    private void evictBookIds(String userId) {
+        Cache cache = cacheManager.getCache(BOOK_IDS_CACHE);
+        if (cache != null) {
+            cache.evict(userId);
+        }
+    }
+
+    private Set<String> toIdSet(List<ObjectId> bookIds) {
+        return bookIds == null ? Collections.emptySet() : bookIds.stream()
+                .map(ObjectId::toHexString)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    // Nạp sách và dữ liệu BookDTO theo lô, giữ thứ tự trong danh sách mong muốn
+    private List<BookDTO> convertToBookDTOs(List<ObjectId> bookIds) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Book> books = bookRepository.findByIdIn(bookIds);
+        List<BookDTO> bookDTOs = bookService.convertToBookDTOs(books);
+        Map<ObjectId, BookDTO> bookDTOsById = new HashMap<>();
+        for (int i = 0; i < books.size(); i++) {
+            bookDTOsById.put(books.get(i).getId(), bookDTOs.get(i));
+        }
+        return bookIds.stream()
+                .map(bookDTOsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     private Optional<WishList> getOrCreateWishList(String userId) {
         Optional<WishList> optionalWishList;
 
@@ -0,0 +1,308 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Cart;
+import com.example.bookgarden.entity.CartLine;
+import com.example.bookgarden.repository.CartRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// Giữ giỏ hàng đang hoạt động trong bộ nhớ (giới hạn số lượng), thay đổi được gộp lại và ghi xuống MongoDB theo chu kỳ
+// hoặc ngay khi đặt hàng. Mỗi thay đổi được ghi thêm vào journal cục bộ và fsync trước khi modify trả về (gộp nhiều thay đổi
+// đồng thời vào một lần fsync) để khôi phục khi khởi động lại sau sự cố. Journal chỉ bị xóa khi mọi thay đổi đã ghi xuống MongoDB.
+// Chỉ dùng khi chạy một instance vì trạng thái giỏ hàng nằm trong bộ nhớ của node.
+@Service
+public class WriteBehindCartStore {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindCartStore.class);
+    private static final String RECORD_END = "end";
+
+    @Autowired
+    private CartRepository cartRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Value("${cart.write-behind.enabled:false}")
+    private boolean enabled;
+    @Value("${cart.write-behind.max-carts:10000}")
+    private long maxCarts;
+    @Value("${cart.write-behind.idle-minutes:30}")
+    private long idleMinutes;
+    @Value("${cart.write-behind.journal-path:data/cart-journal.log}")
+    private String journalPath;
+
+    private Cache<ObjectId, CachedCart> carts;
+    // Giỏ bị đẩy khỏi cache khi chưa ghi được xuống MongoDB; flushAll thử lại, load lấy lại bản này thay vì đọc DB
+    private final Map<ObjectId, CachedCart> failedEvictions = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private final Object syncLock = new Object();
+    private FileChannel journalChannel;
+    private long writtenRecords;
+    private long syncedRecords;
+
+    private static class CachedCart {
+        private final Cart cart;
+        private boolean dirty;
+
+        CachedCart(Cart cart) {
+            this.cart = cart;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        carts = Caffeine.newBuilder()
+                .maximumSize(maxCarts)
+                .expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+                .evictionListener((ObjectId userId, CachedCart entry, RemovalCause cause) -> {
+                    if (entry != null && userId != null && !flush(entry)) {
+                        failedEvictions.put(userId, entry);
+                    }
+                })
+                .build();
+        recoverJournal();
+        openJournal();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Cart> find(ObjectId userId) {
+        CachedCart entry = load(userId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (entry) {
+            return Optional.of(snapshot(entry.cart));
+        }
+    }
+
+    public void put(Cart cart) {
+        carts.put(cart.getUser(), new CachedCart(cart));
+    }
+
+    // Áp dụng thay đổi lên giỏ trong bộ nhớ; trả về bản sao sau khi đổi, hoặc null nếu không có giỏ hoặc thay đổi bị từ chối
+    public Cart modify(ObjectId userId, Predicate<Cart> change) {
+        CachedCart entry = load(userId);
+        if (entry == null) {
+            return null;
+        }
+        Cart result;
+        synchronized (entry) {
+            if (!change.test(entry.cart)) {
+                return null;
+            }
+            entry.dirty = true;
+            result = snapshot(entry.cart);
+        }
+        appendJournal(result);
+        return result;
+    }
+
+    // Ghi ngay giỏ của user xuống MongoDB, dùng trước khi đặt hàng
+    public void flush(ObjectId userId) {
+        CachedCart entry = carts.getIfPresent(userId);
+        if (entry != null) {
+            flush(entry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{${cart.write-behind.flush-interval-seconds:5} * 1000}")
+    public void flushAll() {
+        if (!enabled) {
+            return;
+        }
+        failedEvictions.forEach((userId, entry) -> {
+            if (flush(entry)) {
+                failedEvictions.remove(userId, entry);
+            }
+        });
+        carts.asMap().values().forEach(this::flush);
+        synchronized (journalLock) {
+            boolean clean = failedEvictions.isEmpty() && carts.asMap().values().stream().noneMatch(entry -> entry.dirty);
+            if (clean) {
+                truncateJournal();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        flushAll();
+        synchronized (journalLock) {
+            try {
+                journalChannel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close cart journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    private CachedCart load(ObjectId userId) {
+        return carts.get(userId, key -> {
+            CachedCart unflushed = failedEvictions.remove(key);
+            return unflushed != null ? unflushed : loadFromDatabase(key);
+        });
+    }
+
+    private CachedCart loadFromDatabase(ObjectId userId) {
+        return cartRepository.findByUser(userId).map(cart -> {
+            if (cart.getLines() == null) cart.setLines(new ArrayList<>());
+            return new CachedCart(cart);
+        }).orElse(null);
+    }
+
+    // Trả về false nếu giỏ vẫn còn thay đổi chưa ghi được xuống MongoDB
+    private boolean flush(CachedCart entry) {
+        synchronized (entry) {
+            if (!entry.dirty) {
+                return true;
+            }
+            try {
+                writeLines(entry.cart.getId(), entry.cart.getLines());
+                entry.dirty = false;
+                return true;
+            } catch (Exception e) {
+                logger.warn("Failed to flush cart {}: {}", entry.cart.getId(), e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private void writeLines(ObjectId cartId, List<CartLine> lines) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(cartId)), new Update().set("lines", lines), Cart.class);
+    }
+
+    private Cart snapshot(Cart cart) {
+        List<CartLine> lines = cart.getLines().stream()
+                .map(line -> new CartLine(line.getId(), line.getBook(), line.getQuantity()))
+                .collect(Collectors.toList());
+        return new Cart(cart.getId(), cart.getUser(), lines);
+    }
+
+    // Mỗi dòng journal: cartId<TAB>lineId:bookId:quantity,...<TAB>end ; dòng sau của cùng giỏ ghi đè dòng trước.
+    // Dấu end cuối dòng giúp bỏ qua bản ghi bị cắt dở khi máy sập giữa lúc ghi.
+    private void appendJournal(Cart cart) {
+        String lines = cart.getLines().stream()
+                .map(line -> line.getId().toHexString() + ":" + line.getBook().toHexString() + ":" + line.getQuantity())
+                .collect(Collectors.joining(","));
+        ByteBuffer record = ByteBuffer.wrap((cart.getId().toHexString() + "\t" + lines + "\t" + RECORD_END + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        long recordNumber;
+        try {
+            synchronized (journalLock) {
+                while (record.hasRemaining()) {
+                    journalChannel.write(record);
+                }
+                recordNumber = ++writtenRecords;
+            }
+            // Group commit: một lần force phủ mọi bản ghi đã write trước nó, các thread tới sau chỉ chờ
+            synchronized (syncLock) {
+                if (syncedRecords < recordNumber) {
+                    long target;
+                    synchronized (journalLock) {
+                        target = writtenRecords;
+                    }
+                    journalChannel.force(false);
+                    syncedRecords = target;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to append cart journal: {}", e.getMessage());
+        }
+    }
+
+    private void openJournal() {
+        try {
+            journalChannel = FileChannel.open(journal(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open cart journal " + journalPath, e);
+        }
+    }
+
+    private void recoverJournal() {
+        Path journal = journal();
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try {
+            Map<ObjectId, List<CartLine>> latestLines = new LinkedHashMap<>();
+            for (String record : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                String[] parts = record.split("\t", -1);
+                if (parts.length != 3 || !RECORD_END.equals(parts[2]) || !ObjectId.isValid(parts[0])) continue;
+                List<CartLine> lines = new ArrayList<>();
+                for (String line : parts[1].split(",")) {
+                    String[] fields = line.split(":");
+                    if (fields.length != 3) continue;
+                    lines.add(new CartLine(new ObjectId(fields[0]), new ObjectId(fields[1]), Integer.parseInt(fields[2])));
+                }
+                latestLines.put(new ObjectId(parts[0]), lines);
+            }
+            latestLines.forEach(this::writeLines);
+            truncateJournal();
+            if (!latestLines.isEmpty()) {
+                logger.info("Recovered {} carts from write-behind journal", latestLines.size());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to recover cart journal {}: {}", journal, e.getMessage());
+        }
+    }
+
+    // Gọi khi giữ journalLock (hoặc trước khi mở journal lúc khởi động)
+    private void truncateJournal() {
+        try {
+            if (journalChannel != null) {
+                journalChannel.truncate(0);
+                journalChannel.force(true);
+            } else {
+                Files.deleteIfExists(journal());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to truncate cart journal: {}", e.getMessage());
+        }
+    }
+
+    private Path journal() {
+        Path path = Paths.get(journalPath);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to create cart journal directory: {}", e.getMessage());
+        }
+        return path;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// So kết quả duyệt CSR/CSC của CosineSimilarityEngine với cosine và điểm gợi ý tính trên ma trận đặc
+class CosineSimilarityEngineTest {
+    private static final double[][] RATINGS = {
+            {5, 3, 0, 1, 0},
+            {4, 0, 0, 1, 2},
+            {1, 1, 0, 5, 0},
+            {0, 0, 5, 4, 1},
+            {0, 1, 4, 0, 3},
+            {0, 0, 0, 0, 0}
+    };
+
+    private final ObjectId[] bookIds = {new ObjectId(), new ObjectId(), new ObjectId(), new ObjectId(), new ObjectId()};
+    private final SparseInteractionMatrix matrix = SparseInteractionMatrix.from(interactions());
+    private final CosineSimilarityEngine engine = new CosineSimilarityEngine(matrix, new ForkJoinPool(2));
+
+    @Test
+    void topNeighborsMatchDenseCosine() {
+        for (int user = 0; user < RATINGS.length; user++) {
+            int row = matrix.indexOfUser(userId(user));
+            CosineSimilarityEngine.Neighbors neighbors = engine.topNeighbors(row, 2);
+            List<Integer> expected = denseTopNeighbors(user, 2);
+
+            assertEquals(expected.size(), neighbors.size(), "neighbors of user " + user);
+            for (int i = 0; i < neighbors.size(); i++) {
+                int other = expected.get(i);
+                assertEquals(userId(other), matrix.getUserId(neighbors.getUsers()[i]));
+                assertEquals(cosine(user, other), neighbors.getSimilarities()[i], 1e-5);
+            }
+        }
+    }
+
+    @Test
+    void recommendMatchesDenseScoresAndSkipsOwnedBooks() {
+        for (int user = 0; user < RATINGS.length; user++) {
+            int row = matrix.indexOfUser(userId(user));
+            Map<ObjectId, Double> recommendations = engine.recommend(row, 2, 5);
+            Map<ObjectId, Double> expected = denseRecommend(user, 2);
+
+            assertEquals(expected.keySet(), recommendations.keySet(), "recommendations of user " + user);
+            expected.forEach((book, score) -> assertEquals(score, recommendations.get(book), 1e-4));
+            for (int book = 0; book < bookIds.length; book++) {
+                if (RATINGS[user][book] > 0) {
+                    assertFalse(recommendations.containsKey(bookIds[book]));
+                }
+            }
+        }
+    }
+
+    @Test
+    void recommendForAllMatchesPerRowRecommend() {
+        List<Map<ObjectId, Double>> all = engine.recommendForAll(2, 5);
+        for (int row = 0; row < matrix.getUserCount(); row++) {
+            assertEquals(engine.recommend(row, 2, 5), all.get(row));
+        }
+    }
+
+    @Test
+    void recommendForRowMatchesBuiltRowWithAndWithoutCandidates() {
+        int[] everyone = new int[matrix.getUserCount()];
+        for (int row = 0; row < everyone.length; row++) {
+            everyone[row] = row;
+        }
+        for (int user = 0; user < RATINGS.length; user++) {
+            int row = matrix.indexOfUser(userId(user));
+            Map<ObjectId, Double> expected = engine.recommend(row, 2, 5);
+            Map<ObjectId, Double> viaIndex = engine.recommendForRow(interactions().get(userId(user)), row, 2, 5, null);
+            Map<ObjectId, Double> viaCandidates = engine.recommendForRow(interactions().get(userId(user)), row, 2, 5, everyone);
+
+            assertEquals(expected.keySet(), viaIndex.keySet());
+            assertEquals(expected.keySet(), viaCandidates.keySet());
+            expected.forEach((book, score) -> {
+                assertEquals(score, viaIndex.get(book), 1e-4);
+                assertEquals(score, viaCandidates.get(book), 1e-4);
+            });
+        }
+    }
+
+    @Test
+    void userWithoutInteractionsHasNoNeighbors() {
+        int row = matrix.indexOfUser(userId(5));
+        assertEquals(0, engine.topNeighbors(row, 3).size());
+        assertTrue(engine.recommend(row, 3, 5).isEmpty());
+    }
+
+    private Map<String, Map<ObjectId, Double>> interactions() {
+        Map<String, Map<ObjectId, Double>> interactions = new LinkedHashMap<>();
+        for (int user = 0; user < RATINGS.length; user++) {
+            Map<ObjectId, Double> row = new LinkedHashMap<>();
+            for (int book = 0; book < bookIds.length; book++) {
+                if (RATINGS[user][book] > 0) {
+                    row.put(bookIds[book], RATINGS[user][book]);
+                }
+            }
+            interactions.put(userId(user), row);
+        }
+        return interactions;
+    }
+
+    // Các user có cosine dương, xếp giảm dần; ma trận mẫu không có hai giá trị bằng nhau
+    private static List<Integer> denseTopNeighbors(int user, int k) {
+        List<Integer> others = new ArrayList<>();
+        for (int other = 0; other < RATINGS.length; other++) {
+            if (other != user && cosine(user, other) > 0) {
+                others.add(other);
+            }
+        }
+        others.sort(Comparator.comparingDouble((Integer other) -> cosine(user, other)).reversed());
+        return others.subList(0, Math.min(k, others.size()));
+    }
+
+    private Map<ObjectId, Double> denseRecommend(int user, int k) {
+        Map<ObjectId, Double> scores = new HashMap<>();
+        for (int other : denseTopNeighbors(user, k)) {
+            for (int book = 0; book < bookIds.length; book++) {
+                if (RATINGS[user][book] == 0 && RATINGS[other][book] > 0) {
+                    scores.merge(bookIds[book], cosine(user, other) * RATINGS[other][book], Double::sum);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static double cosine(int user, int other) {
+        double dot = 0.0;
+        double userNorm = 0.0;
+        double otherNorm = 0.0;
+        for (int book = 0; book < RATINGS[user].length; book++) {
+            dot += RATINGS[user][book] * RATINGS[other][book];
+            userNorm += RATINGS[user][book] * RATINGS[user][book];
+            otherNorm += RATINGS[other][book] * RATINGS[other][book];
+        }
+        return dot == 0.0 ? 0.0 : dot / Math.sqrt(userNorm * otherNorm);
+    }
+
+    private static String userId(int user) {
+        return "user" + user;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// So nghiệm Cholesky của Solver (qua foldInUser) với nghiệm khử Gauss trên ma trận đặc dựng trực tiếp từ công thức
+class ImplicitAlsTrainerTest {
+    private static final double REGULARIZATION = 0.1;
+    private static final double ALPHA = 40.0;
+    private static final int FACTORS = 3;
+    private static final float[][] BOOK_FACTORS = {
+            {0.5f, -0.2f, 0.1f},
+            {0.3f, 0.4f, -0.6f},
+            {-0.1f, 0.7f, 0.2f},
+            {0.2f, 0.1f, 0.9f}
+    };
+
+    private final ObjectId[] bookIds = {new ObjectId(), new ObjectId(), new ObjectId(), new ObjectId()};
+    private final ImplicitAlsTrainer trainer = new ImplicitAlsTrainer(FACTORS, 10, REGULARIZATION, ALPHA);
+
+    @Test
+    void foldInUserMatchesDenseSolve() {
+        double[] ratings = {2.0, 0.0, 1.0, 0.0};
+        Map<ObjectId, Double> interactions = new LinkedHashMap<>();
+        interactions.put(bookIds[0], ratings[0]);
+        interactions.put(bookIds[2], ratings[2]);
+
+        float[] vector = trainer.foldInUser(model(), interactions);
+
+        double[] expected = denseSolve(ratings);
+        for (int d = 0; d < FACTORS; d++) {
+            assertEquals(expected[d], vector[d], 1e-4, "factor " + d);
+        }
+    }
+
+    @Test
+    void foldInUserIgnoresUnknownBooks() {
+        Map<ObjectId, Double> interactions = new LinkedHashMap<>();
+        interactions.put(bookIds[1], 3.0);
+        float[] known = trainer.foldInUser(model(), interactions);
+
+        interactions.put(new ObjectId(), 5.0);
+        float[] withUnknown = trainer.foldInUser(model(), interactions);
+
+        for (int d = 0; d < FACTORS; d++) {
+            assertEquals(known[d], withUnknown[d], 0f);
+        }
+    }
+
+    @Test
+    void foldInUserWithoutInteractionsIsZero() {
+        float[] vector = trainer.foldInUser(model(), new LinkedHashMap<>());
+        for (float value : vector) {
+            assertEquals(0f, value, 0f);
+        }
+    }
+
+    // Hai nhóm user tách biệt: sau huấn luyện mỗi user phải chấm sách của nhóm mình cao hơn sách của nhóm kia
+    @Test
+    void trainSeparatesDisjointGroups() {
+        Map<String, Map<ObjectId, Double>> interactions = new LinkedHashMap<>();
+        interactions.put("u0", ratings(bookIds[0], bookIds[1]));
+        interactions.put("u1", ratings(bookIds[0], bookIds[1]));
+        interactions.put("u2", ratings(bookIds[2], bookIds[3]));
+        interactions.put("u3", ratings(bookIds[2], bookIds[3]));
+        SparseInteractionMatrix matrix = SparseInteractionMatrix.from(interactions);
+
+        ImplicitAlsModel model = new ImplicitAlsTrainer(2, 10, REGULARIZATION, ALPHA).train(matrix, new ForkJoinPool(2));
+
+        assertTrue(score(model, "u0", bookIds[0]) > score(model, "u0", bookIds[2]));
+        assertTrue(score(model, "u1", bookIds[1]) > score(model, "u1", bookIds[3]));
+        assertTrue(score(model, "u2", bookIds[2]) > score(model, "u2", bookIds[0]));
+        assertTrue(score(model, "u3", bookIds[3]) > score(model, "u3", bookIds[1]));
+    }
+
+    private ImplicitAlsModel model() {
+        float[] bookFactors = new float[BOOK_FACTORS.length * FACTORS];
+        for (int i = 0; i < BOOK_FACTORS.length; i++) {
+            System.arraycopy(BOOK_FACTORS[i], 0, bookFactors, i * FACTORS, FACTORS);
+        }
+        return new ImplicitAlsModel(FACTORS, new String[0], bookIds, new float[0], bookFactors);
+    }
+
+    // (YtCY + lambda*I) x = YtCp với c = 1 + alpha*r, p = 1 khi r > 0
+    private static double[] denseSolve(double[] ratings) {
+        double[][] a = new double[FACTORS][FACTORS + 1];
+        for (int i = 0; i < BOOK_FACTORS.length; i++) {
+            double confidence = 1.0 + ALPHA * ratings[i];
+            double preference = ratings[i] > 0 ? 1.0 : 0.0;
+            for (int p = 0; p < FACTORS; p++) {
+                for (int q = 0; q < FACTORS; q++) {
+                    a[p][q] += confidence * BOOK_FACTORS[i][p] * BOOK_FACTORS[i][q];
+                }
+                a[p][FACTORS] += confidence * preference * BOOK_FACTORS[i][p];
+            }
+        }
+        for (int p = 0; p < FACTORS; p++) {
+            a[p][p] += REGULARIZATION;
+        }
+
+        for (int pivot = 0; pivot < FACTORS; pivot++) {
+            for (int row = pivot + 1; row < FACTORS; row++) {
+                double factor = a[row][pivot] / a[pivot][pivot];
+                for (int column = pivot; column <= FACTORS; column++) {
+                    a[row][column] -= factor * a[pivot][column];
+                }
+            }
+        }
+        double[] x = new double[FACTORS];
+        for (int row = FACTORS - 1; row >= 0; row--) {
+            double sum = a[row][FACTORS];
+            for (int column = row + 1; column < FACTORS; column++) {
+                sum -= a[row][column] * x[column];
+            }
+            x[row] = sum / a[row][row];
+        }
+        return x;
+    }
+
+    private static Map<ObjectId, Double> ratings(ObjectId... books) {
+        Map<ObjectId, Double> ratings = new LinkedHashMap<>();
+        for (ObjectId book : books) {
+            ratings.put(book, 1.0);
+        }
+        return ratings;
+    }
+
+    private static double score(ImplicitAlsModel model, String userId, ObjectId bookId) {
+        float[] user = model.userVector(model.indexOfUser(userId));
+        float[] book = model.bookVector(model.indexOfBook(bookId));
+        double score = 0.0;
+        for (int d = 0; d < user.length; d++) {
+            score += user[d] * book[d];
+        }
+        return score;
+    }
+}
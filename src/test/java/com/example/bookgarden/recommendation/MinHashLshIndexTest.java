@@ -0,0 +1,104 @@
+package com.example.bookgarden.recommendation;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Kiểm tra chia band của MinHashLshIndex: tập giống nhau luôn chung bucket, tập rời nhau không,
+// và tỉ lệ khớp chữ ký xấp xỉ Jaccard tính trực tiếp trên hai tập
+class MinHashLshIndexTest {
+    private final List<ObjectId> books = new ArrayList<>();
+
+    // Id cố định để chữ ký MinHash (và kết quả test) giống nhau ở mọi lần chạy
+    MinHashLshIndexTest() {
+        for (int i = 0; i < 200; i++) {
+            books.add(new ObjectId(String.format("5f%014x%08x", i * 104729L, i * 7919)));
+        }
+    }
+
+    @Test
+    void identicalSetsAreCandidates() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 4);
+        index.put("a", books.subList(0, 20));
+        index.put("b", new ArrayList<>(books.subList(0, 20)));
+
+        assertEquals(Set.of("b"), index.candidates("a"));
+        assertEquals(Set.of("a"), index.candidates("b"));
+        assertEquals(1f, index.estimateSimilarity("a", "b"), 0f);
+    }
+
+    @Test
+    void disjointSetsAreNotCandidates() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 4);
+        index.put("a", books.subList(0, 50));
+        index.put("b", books.subList(50, 100));
+
+        assertFalse(index.candidates("a").contains("b"));
+        assertTrue(index.estimateSimilarity("a", "b") < 0.1f);
+    }
+
+    @Test
+    void estimateSimilarityApproximatesJaccard() {
+        MinHashLshIndex index = new MinHashLshIndex(32, 4);
+        List<ObjectId> first = books.subList(0, 120);
+        List<ObjectId> second = books.subList(20, 140);
+        index.put("a", first);
+        index.put("b", second);
+
+        assertEquals(jaccard(first, second), index.estimateSimilarity("a", "b"), 0.15);
+        // Jaccard 100/140 với band 4 hàng: xác suất không chung band nào là (1 - 0.714^4)^32 ≈ 0.007%
+        assertTrue(index.candidates("a").contains("b"));
+    }
+
+    @Test
+    void removeAndEmptyPutDropUserFromBuckets() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 4);
+        index.put("a", books.subList(0, 20));
+        index.put("b", books.subList(0, 20));
+        index.put("c", books.subList(0, 20));
+
+        index.remove("b");
+        index.put("c", Collections.emptyList());
+
+        assertEquals(1, index.size());
+        assertTrue(index.candidates("a").isEmpty());
+        assertTrue(index.candidates("b").isEmpty());
+    }
+
+    @Test
+    void forMatrixMapsCandidatesToRows() {
+        Map<String, Map<ObjectId, Double>> interactions = new LinkedHashMap<>();
+        interactions.put("a", ratings(books.subList(0, 20)));
+        interactions.put("b", ratings(books.subList(100, 120)));
+        interactions.put("c", ratings(books.subList(0, 20)));
+        SparseInteractionMatrix matrix = SparseInteractionMatrix.from(interactions);
+        MinHashLshIndex index = new MinHashLshIndex(16, 4);
+        index.rebuild(interactions);
+
+        NeighborCandidates candidates = index.forMatrix(matrix);
+        int rowA = matrix.indexOfUser("a");
+        int rowC = matrix.indexOfUser("c");
+
+        assertEquals(List.of(rowC), Arrays.stream(candidates.candidatesOf(rowA)).boxed().toList());
+        assertEquals(1f, candidates.estimateSimilarity(rowA, rowC), 0f);
+    }
+
+    private static double jaccard(Collection<ObjectId> first, Collection<ObjectId> second) {
+        Set<ObjectId> intersection = new HashSet<>(first);
+        intersection.retainAll(second);
+        Set<ObjectId> union = new HashSet<>(first);
+        union.addAll(second);
+        return (double) intersection.size() / union.size();
+    }
+
+    private static Map<ObjectId, Double> ratings(Collection<ObjectId> books) {
+        Map<ObjectId, Double> ratings = new LinkedHashMap<>();
+        books.forEach(book -> ratings.put(book, 1.0));
+        return ratings;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.bookgarden.recommendation.benchmark;
+
+import org.bson.types.ObjectId;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Tập tương tác user -> (book -> điểm) dùng cho đánh giá offline, đọc từ CSV hoặc sinh ngẫu nhiên
+public class InteractionDataset {
+    private final String name;
+    private final Map<String, Map<ObjectId, Double>> interactions;
+
+    public InteractionDataset(String name, Map<String, Map<ObjectId, Double>> interactions) {
+        this.name = name;
+        this.interactions = interactions;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Map<ObjectId, Double>> getInteractions() {
+        return interactions;
+    }
+
+    public int getInteractionCount() {
+        return interactions.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // Định dạng mỗi dòng: userId,bookId[,rating]; dòng tiêu đề và dòng không hợp lệ được bỏ qua
+    public static InteractionDataset fromCsv(Path path) throws IOException {
+        Map<String, ObjectId> bookIds = new HashMap<>();
+        Map<String, Map<ObjectId, Double>> interactions = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+                if (columns.length < 2) continue;
+                double rating = 1.0;
+                if (columns.length > 2) {
+                    try {
+                        rating = Double.parseDouble(columns[2].trim());
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+                ObjectId bookId = bookIds.computeIfAbsent(columns[1].trim(), key -> new ObjectId());
+                interactions.computeIfAbsent(columns[0].trim(), key -> new HashMap<>()).merge(bookId, rating, Double::sum);
+            }
+        }
+        return new InteractionDataset(path.getFileName().toString(), interactions);
+    }
+
+    // Sinh dữ liệu có cấu trúc cụm: mỗi user thuộc một nhóm sở thích, độ phổ biến sách theo phân phối Zipf
+    public static InteractionDataset synthetic(int interactionCount, long seed) {
+        Random random = new Random(seed);
+        int userCount = Math.max(50, interactionCount / 20);
+        int bookCount = Math.max(200, interactionCount / 50);
+        int clusterCount = Math.max(5, Math.min(50, bookCount / 20));
+        int booksPerCluster = bookCount / clusterCount;
+
+        ObjectId[] books = new ObjectId[bookCount];
+        for (int i = 0; i < bookCount; i++) {
+            books[i] = new ObjectId();
+        }
+        double[] clusterZipf = zipf(booksPerCluster);
+        double[] globalZipf = zipf(bookCount);
+
+        Map<String, Map<ObjectId, Double>> interactions = new HashMap<>();
+        for (int i = 0; i < interactionCount; i++) {
+            int user = random.nextInt(userCount);
+            int cluster = user % clusterCount;
+            int book = random.nextDouble() < 0.8
+                    ? cluster * booksPerCluster + sample(clusterZipf, random)
+                    : sample(globalZipf, random);
+            interactions.computeIfAbsent("user-" + user, key -> new HashMap<>()).merge(books[book], 1.0, Double::sum);
+        }
+        return new InteractionDataset("synthetic-" + interactionCount, interactions);
+    }
+
+    // Giữ lại ngẫu nhiên một phần tương tác của mỗi user (có ít nhất 3 sách) làm tập kiểm tra
+    public Split split(double testRatio, long seed) {
+        Random random = new Random(seed);
+        Map<String, Map<ObjectId, Double>> train = new HashMap<>();
+        Map<String, Set<ObjectId>> test = new HashMap<>();
+        for (Map.Entry<String, Map<ObjectId, Double>> entry : interactions.entrySet()) {
+            List<ObjectId> books = new ArrayList<>(entry.getValue().keySet());
+            Map<ObjectId, Double> trainRow = new HashMap<>(entry.getValue());
+            if (books.size() >= 3) {
+                Collections.shuffle(books, random);
+                int holdOut = Math.max(1, (int) Math.round(books.size() * testRatio));
+                Set<ObjectId> testBooks = new HashSet<>(books.subList(0, holdOut));
+                trainRow.keySet().removeAll(testBooks);
+                test.put(entry.getKey(), testBooks);
+            }
+            train.put(entry.getKey(), trainRow);
+        }
+        return new Split(train, test);
+    }
+
+    public static class Split {
+        private final Map<String, Map<ObjectId, Double>> train;
+        private final Map<String, Set<ObjectId>> test;
+
+        Split(Map<String, Map<ObjectId, Double>> train, Map<String, Set<ObjectId>> test) {
+            this.train = train;
+            this.test = test;
+        }
+
+        public Map<String, Map<ObjectId, Double>> getTrain() {
+            return train;
+        }
+
+        public Map<String, Set<ObjectId>> getTest() {
+            return test;
+        }
+    }
+
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0.0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.bookgarden.recommendation.benchmark;
+
+import com.example.bookgarden.recommendation.CosineSimilarityEngine;
+import com.example.bookgarden.recommendation.ImplicitAlsModel;
+import com.example.bookgarden.recommendation.ImplicitAlsTrainer;
+import com.example.bookgarden.recommendation.MinHashLshIndex;
+import com.example.bookgarden.recommendation.NeighborCandidates;
+import com.example.bookgarden.recommendation.SparseInteractionMatrix;
+import org.bson.types.ObjectId;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+// Đánh giá offline các thuật toán gợi ý trên dữ liệu trong bộ nhớ (không cần MongoDB):
+// precision@k, recall@k, độ phủ danh mục, thời gian build, bộ nhớ và độ trễ mỗi request.
+// Chạy: mvn -Pbenchmark test-compile exec:java -Dexec.args="--scales=10000,100000,1000000 --k=10"
+// Nếu src/main/data/ratings.csv có dữ liệu (userId,bookId[,rating]) thì chạy thêm trên tập đó.
+public class RecommenderBenchmark {
+    private static final Path RATINGS_CSV = Paths.get("src/main/data/ratings.csv");
+    private static final long SEED = 2024L;
+
+    private final int k;
+    private final int neighborCount;
+    private final int evaluationUsers;
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public RecommenderBenchmark(int k, int neighborCount, int evaluationUsers) {
+        this.k = k;
+        this.neighborCount = neighborCount;
+        this.evaluationUsers = evaluationUsers;
+    }
+
+    // Một thuật toán: fit trên tập train rồi trả về top-k sách chưa có trong train của user
+    interface Recommender {
+        String name();
+
+        void fit(SparseInteractionMatrix matrix, Map<String, Map<ObjectId, Double>> train);
+
+        Map<ObjectId, Double> recommend(String userId, int k);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        int neighbors = Integer.parseInt(options.getOrDefault("neighbors", "10"));
+        int evaluationUsers = Integer.parseInt(options.getOrDefault("eval-users", "1000"));
+        List<Integer> scales = Arrays.stream(options.getOrDefault("scales", "10000,100000,1000000").split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .collect(Collectors.toList());
+
+        List<InteractionDataset> datasets = new ArrayList<>();
+        Path csv = Paths.get(options.getOrDefault("data", RATINGS_CSV.toString()));
+        if (Files.exists(csv) && Files.size(csv) > 0) {
+            datasets.add(InteractionDataset.fromCsv(csv));
+        }
+        for (int scale : scales) {
+            datasets.add(InteractionDataset.synthetic(scale, SEED));
+        }
+
+        RecommenderBenchmark benchmark = new RecommenderBenchmark(k, neighbors, evaluationUsers);
+        try {
+            for (InteractionDataset dataset : datasets) {
+                benchmark.run(dataset);
+            }
+        } finally {
+            benchmark.pool.shutdown();
+        }
+    }
+
+    public void run(InteractionDataset dataset) {
+        InteractionDataset.Split split = dataset.split(0.2, SEED);
+        long matrixStart = System.nanoTime();
+        SparseInteractionMatrix matrix = SparseInteractionMatrix.from(split.getTrain());
+        long matrixMillis = (System.nanoTime() - matrixStart) / 1_000_000;
+
+        System.out.printf("%n=== %s: %d users, %d books, %d interactions (matrix %d ms, ~%d KB) ===%n",
+                dataset.getName(), matrix.getUserCount(), matrix.getBookCount(), dataset.getInteractionCount(),
+                matrixMillis, matrix.estimateMemoryBytes() / 1024);
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "model", "P@" + k, "R@" + k, "coverage", "build ms", "heap MB", "p50 us", "p95 us", "mean us");
+
+        List<String> testUsers = new ArrayList<>(split.getTest().keySet());
+        Collections.shuffle(testUsers, new Random(SEED));
+        testUsers = testUsers.subList(0, Math.min(evaluationUsers, testUsers.size()));
+
+        for (Recommender recommender : recommenders()) {
+            evaluate(recommender, matrix, split, testUsers);
+        }
+    }
+
+    private List<Recommender> recommenders() {
+        MinHashLshIndex lshIndex = new MinHashLshIndex(16, 4);
+        return List.of(
+                new PopularityRecommender(),
+                new CosineRecommender("cosine", null, true),
+                new CosineRecommender("cosine-lsh", lshIndex, true),
+                new CosineRecommender("lsh-estimate", lshIndex, false),
+                new AlsRecommender(new ImplicitAlsTrainer(32, 10, 0.1, 40)));
+    }
+
+    private void evaluate(Recommender recommender, SparseInteractionMatrix matrix, InteractionDataset.Split split, List<String> testUsers) {
+        long heapBefore = usedHeap();
+        long buildStart = System.nanoTime();
+        recommender.fit(matrix, split.getTrain());
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000;
+        long heapMegabytes = Math.max(0, usedHeap() - heapBefore) / (1024 * 1024);
+
+        double precisionSum = 0.0;
+        double recallSum = 0.0;
+        Set<ObjectId> recommendedBooks = new HashSet<>();
+        long[] latencies = new long[testUsers.size()];
+        for (int i = 0; i < testUsers.size(); i++) {
+            String userId = testUsers.get(i);
+            long start = System.nanoTime();
+            Map<ObjectId, Double> recommendations = recommender.recommend(userId, k);
+            latencies[i] = (System.nanoTime() - start) / 1_000;
+
+            Set<ObjectId> relevant = split.getTest().get(userId);
+            long hits = recommendations.keySet().stream().filter(relevant::contains).count();
+            precisionSum += (double) hits / k;
+            recallSum += (double) hits / relevant.size();
+            recommendedBooks.addAll(recommendations.keySet());
+        }
+
+        int users = Math.max(1, testUsers.size());
+        Arrays.sort(latencies);
+        System.out.printf("%-14s %10.4f %10.4f %10.4f %10d %10d %10d %10d %10.1f%n",
+                recommender.name(), precisionSum / users, recallSum / users,
+                (double) recommendedBooks.size() / Math.max(1, matrix.getBookCount()),
+                buildMillis, heapMegabytes, percentile(latencies, 0.5), percentile(latencies, 0.95),
+                Arrays.stream(latencies).average().orElse(0.0));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+
+    // Giữ top-k sách chưa có trong train của user theo thứ tự điểm đã sắp xếp
+    private static Map<ObjectId, Double> excludeTrained(Map<ObjectId, Double> scored, Map<ObjectId, Double> trained, int k) {
+        Map<ObjectId, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<ObjectId, Double> entry : scored.entrySet()) {
+            if (result.size() >= k) break;
+            if (trained == null || !trained.containsKey(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static class PopularityRecommender implements Recommender {
+        private Map<ObjectId, Double> ranked;
+        private Map<String, Map<ObjectId, Double>> train;
+
+        @Override
+        public String name() {
+            return "popularity";
+        }
+
+        @Override
+        public void fit(SparseInteractionMatrix matrix, Map<String, Map<ObjectId, Double>> train) {
+            this.train = train;
+            Map<ObjectId, Double> counts = new HashMap<>();
+            train.values().forEach(row -> row.keySet().forEach(bookId -> counts.merge(bookId, 1.0, Double::sum)));
+            ranked = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<ObjectId, Double>comparingByValue().reversed())
+                    .forEach(entry -> ranked.put(entry.getKey(), entry.getValue()));
+        }
+
+        @Override
+        public Map<ObjectId, Double> recommend(String userId, int k) {
+            return excludeTrained(ranked, train.get(userId), k);
+        }
+    }
+
+    private class CosineRecommender implements Recommender {
+        private final String name;
+        private final MinHashLshIndex lshIndex;
+        private final boolean exactRerank;
+        private SparseInteractionMatrix matrix;
+        private CosineSimilarityEngine engine;
+        private NeighborCandidates candidates;
+
+        CosineRecommender(String name, MinHashLshIndex lshIndex, boolean exactRerank) {
+            this.name = name;
+            this.lshIndex = lshIndex;
+            this.exactRerank = exactRerank;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void fit(SparseInteractionMatrix matrix, Map<String, Map<ObjectId, Double>> train) {
+            this.matrix = matrix;
+            this.engine = new CosineSimilarityEngine(matrix, pool);
+            if (lshIndex != null) {
+                lshIndex.rebuild(train);
+                candidates = lshIndex.forMatrix(matrix);
+            }
+        }
+
+        @Override
+        public Map<ObjectId, Double> recommend(String userId, int k) {
+            int row = matrix.indexOfUser(userId);
+            if (row < 0) {
+                return Collections.emptyMap();
+            }
+            return candidates == null
+                    ? engine.recommend(row, neighborCount, k)
+                    : engine.recommend(row, neighborCount, k, candidates, exactRerank);
+        }
+    }
+
+    private class AlsRecommender implements Recommender {
+        private final ImplicitAlsTrainer trainer;
+        private ImplicitAlsModel model;
+        private Map<String, Map<ObjectId, Double>> train;
+
+        AlsRecommender(ImplicitAlsTrainer trainer) {
+            this.trainer = trainer;
+        }
+
+        @Override
+        public String name() {
+            return "als";
+        }
+
+        @Override
+        public void fit(SparseInteractionMatrix matrix, Map<String, Map<ObjectId, Double>> train) {
+            this.train = train;
+            this.model = trainer.train(matrix, pool);
+        }
+
+        @Override
+        public Map<ObjectId, Double> recommend(String userId, int k) {
+            int row = model.indexOfUser(userId);
+            if (row < 0) {
+                return Collections.emptyMap();
+            }
+            return model.recommend(model.userVector(row), train.get(userId).keySet(), k);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bookgarden.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalModerationProviderTest {
+    private final LocalModerationProvider provider = new LocalModerationProvider();
+
+    @Test
+    void rejectsContentContainingBlockedWordIgnoringCase() {
+        ReflectionTestUtils.setField(provider, "blockedWords", List.of("spam", " Lừa Đảo "));
+
+        assertFalse(provider.isContentAppropriate("Mua ngay kẻo lỡ, SPAM giá rẻ"));
+        assertFalse(provider.isContentAppropriate("Trang này lừa đảo"));
+        assertTrue(provider.isContentAppropriate("Một cuốn sách rất hay"));
+    }
+
+    // Từ rỗng (vd. dấu phẩy thừa trong post.moderation.local.blocked-words) không được chặn mọi bài
+    @Test
+    void blankBlockedWordsAllowEverything() {
+        ReflectionTestUtils.setField(provider, "blockedWords", List.of("", "  "));
+
+        assertTrue(provider.isContentAppropriate("Bất kỳ nội dung nào"));
+    }
+
+    @Test
+    void nullContentIsAppropriate() {
+        ReflectionTestUtils.setField(provider, "blockedWords", List.of("spam"));
+
+        assertTrue(provider.isContentAppropriate(null));
+    }
+}
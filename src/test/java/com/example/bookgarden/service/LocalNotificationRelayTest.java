@@ -0,0 +1,55 @@
+package com.example.bookgarden.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+// Relay một node phải đưa mỗi thông báo tới cả ba đích trong JVM: broker STOMP, topic kiểu cũ và luồng SSE
+@ExtendWith(MockitoExtension.class)
+class LocalNotificationRelayTest {
+    @Mock
+    private SimpMessagingTemplate simpMessagingTemplate;
+    @Mock
+    private NotificationStreamService notificationStreamService;
+    @Mock
+    private LegacyNotificationMirror legacyNotificationMirror;
+    @InjectMocks
+    private LocalNotificationRelay relay;
+
+    @Test
+    void publishSendsToBrokerThenMirrorsAndStreams() {
+        Map<String, String> payload = Map.of("title", "Sách mới");
+
+        relay.publish("/topic/broadcast", payload);
+
+        InOrder order = inOrder(simpMessagingTemplate, legacyNotificationMirror, notificationStreamService);
+        order.verify(simpMessagingTemplate).convertAndSend("/topic/broadcast", (Object) payload);
+        order.verify(legacyNotificationMirror).mirrorBroadcasts("/topic/broadcast", payload);
+        order.verify(notificationStreamService).deliver("/topic/broadcast", null, payload);
+    }
+
+    @Test
+    void publishToUserTargetsOnlyThatUser() {
+        Map<String, String> payload = Map.of("title", "Bài viết đã được duyệt");
+
+        relay.publishToUser("user-1", "/queue/notifications", payload);
+
+        verify(simpMessagingTemplate).convertAndSendToUser("user-1", "/queue/notifications", payload);
+        verify(notificationStreamService).deliver("/queue/notifications", "user-1", payload);
+        verify(simpMessagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+        verifyNoInteractions(legacyNotificationMirror);
+    }
+}
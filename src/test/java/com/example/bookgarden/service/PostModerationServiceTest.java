@@ -0,0 +1,257 @@
+package com.example.bookgarden.service;
+
+import com.example.bookgarden.entity.Post;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+// Các nhánh của worker kiểm duyệt: giữ chỗ (lease), duyệt/từ chối, thử lại với backoff lũy thừa có trần,
+// chuyển sang duyệt tay khi hết lượt và dừng job quét khi hàng đợi đầy. Executor chạy tác vụ ngay trên thread test.
+@ExtendWith(MockitoExtension.class)
+class PostModerationServiceTest {
+    private static final long BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 3_000;
+    private static final long LEASE_MS = 60_000;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private ModerationProvider moderationProvider;
+    @Mock
+    private NotificationService notificationService;
+    @Mock
+    private ThreadPoolTaskExecutor moderationExecutor;
+    @InjectMocks
+    private PostModerationService postModerationService;
+
+    private final Post post = new Post();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(postModerationService, "clientHost", "http://client");
+        ReflectionTestUtils.setField(postModerationService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(postModerationService, "backoffMillis", BACKOFF_MS);
+        ReflectionTestUtils.setField(postModerationService, "maxBackoffMillis", MAX_BACKOFF_MS);
+        ReflectionTestUtils.setField(postModerationService, "leaseMillis", LEASE_MS);
+        ReflectionTestUtils.setField(postModerationService, "sweepBatchSize", 10);
+
+        post.setId(new ObjectId());
+        post.setPostedBy(new ObjectId());
+        post.setTitle("Cảm nhận về Dế Mèn phiêu lưu ký");
+        post.setContent("Một cuốn sách tuổi thơ");
+        post.setStatus(PostModerationService.STATUS_PENDING_MODERATION);
+    }
+
+    @Test
+    void claimLeasesPendingPostBeforeModeration() {
+        runInline();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Post.class)))
+                .thenReturn(null);
+        long before = System.currentTimeMillis();
+
+        postModerationService.submit(post.getId());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> lease = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), lease.capture(), any(FindAndModifyOptions.class), eq(Post.class));
+        assertEquals(PostModerationService.STATUS_PENDING_MODERATION, query.getValue().getQueryObject().get("status"));
+        assertBetween(before + LEASE_MS, System.currentTimeMillis() + LEASE_MS, set(lease.getValue()).getDate("moderationRetryAt"));
+    }
+
+    @Test
+    void postLeasedByAnotherWorkerIsSkipped() {
+        runInline();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Post.class)))
+                .thenReturn(null);
+
+        postModerationService.submit(post.getId());
+
+        verifyNoInteractions(moderationProvider, notificationService);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Post.class));
+    }
+
+    @Test
+    void appropriatePostIsApprovedAndAuthorNotified() {
+        runInline();
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenReturn(true);
+        updatesModify(1);
+
+        postModerationService.submit(post.getId());
+
+        Update update = capturedUpdate();
+        assertEquals("Approved", set(update).get("status"));
+        assertTrue(unset(update).containsKey("moderationRetryAt"));
+        verify(notificationService).createNotification(eq(post.getPostedBy().toHexString()), eq("Bài viết đã được duyệt"),
+                anyString(), eq("http://client/profile/my-post"), eq(""));
+    }
+
+    @Test
+    void inappropriatePostIsRejectedAndAuthorNotified() {
+        runInline();
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenReturn(false);
+        updatesModify(1);
+
+        postModerationService.submit(post.getId());
+
+        assertEquals("Rejected", set(capturedUpdate()).get("status"));
+        verify(notificationService).createNotification(eq(post.getPostedBy().toHexString()), eq("Bài viết bị từ chối"),
+                anyString(), anyString(), anyString());
+    }
+
+    // Bài đã bị xóa hoặc admin duyệt tay trong lúc gọi provider: updateFirst không khớp, không gửi thông báo
+    @Test
+    void staleCompletionDoesNotNotify() {
+        runInline();
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenReturn(true);
+        updatesModify(0);
+
+        postModerationService.submit(post.getId());
+
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void providerFailureSchedulesRetryAfterBackoff() {
+        runInline();
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenThrow(new IllegalStateException("timeout"));
+        long before = System.currentTimeMillis();
+
+        postModerationService.submit(post.getId());
+
+        Document set = set(capturedUpdate());
+        assertEquals(1, set.get("moderationAttempts"));
+        assertBetween(before + BACKOFF_MS, System.currentTimeMillis() + BACKOFF_MS, set.getDate("moderationRetryAt"));
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void backoffDoublesPerAttemptUpToTheCap() {
+        ReflectionTestUtils.setField(postModerationService, "maxAttempts", 10);
+        runInline();
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenThrow(new IllegalStateException("timeout"));
+
+        post.setModerationAttempts(1);
+        long before = System.currentTimeMillis();
+        postModerationService.submit(post.getId());
+        assertBetween(before + 2 * BACKOFF_MS, System.currentTimeMillis() + 2 * BACKOFF_MS,
+                set(capturedUpdate(1)).getDate("moderationRetryAt"));
+
+        post.setModerationAttempts(5);
+        before = System.currentTimeMillis();
+        postModerationService.submit(post.getId());
+        assertBetween(before + MAX_BACKOFF_MS, System.currentTimeMillis() + MAX_BACKOFF_MS,
+                set(capturedUpdate(2)).getDate("moderationRetryAt"));
+    }
+
+    @Test
+    void lastFailedAttemptLeavesPostForManualReview() {
+        runInline();
+        post.setModerationAttempts(2);
+        claimReturnsPost();
+        when(moderationProvider.isContentAppropriate(post.getContent())).thenThrow(new IllegalStateException("timeout"));
+
+        postModerationService.submit(post.getId());
+
+        Update update = capturedUpdate();
+        assertEquals("Pending", set(update).get("status"));
+        assertEquals(3, set(update).get("moderationAttempts"));
+        assertTrue(unset(update).containsKey("moderationRetryAt"));
+    }
+
+    @Test
+    void sweepStopsAtTheFirstRejectedSubmission() {
+        Post other = new Post();
+        other.setId(new ObjectId());
+        when(mongoTemplate.find(any(Query.class), eq(Post.class))).thenReturn(List.of(post, other));
+        doThrow(new RejectedExecutionException("full")).when(moderationExecutor).execute(any(Runnable.class));
+
+        postModerationService.sweep();
+
+        verify(moderationExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void submitLeavesPostForSweepWhenQueueIsFull() {
+        doThrow(new RejectedExecutionException("full")).when(moderationExecutor).execute(any(Runnable.class));
+
+        postModerationService.submit(post.getId());
+
+        verifyNoInteractions(mongoTemplate, moderationProvider);
+    }
+
+    private void runInline() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(moderationExecutor).execute(any(Runnable.class));
+    }
+
+    private void claimReturnsPost() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Post.class)))
+                .thenReturn(post);
+    }
+
+    private void updatesModify(long modified) {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Post.class)))
+                .thenReturn(UpdateResult.acknowledged(modified, modified, null));
+    }
+
+    private Update capturedUpdate() {
+        return capturedUpdate(1);
+    }
+
+    // Update của lần gọi updateFirst thứ n
+    private Update capturedUpdate(int call) {
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(call)).updateFirst(any(Query.class), update.capture(), eq(Post.class));
+        return update.getAllValues().get(call - 1);
+    }
+
+    private static Document set(Update update) {
+        return (Document) update.getUpdateObject().get("$set");
+    }
+
+    private static Document unset(Update update) {
+        return (Document) update.getUpdateObject().get("$unset");
+    }
+
+    private static void assertBetween(long from, long to, Date actual) {
+        assertTrue(actual.getTime() >= from && actual.getTime() <= to,
+                "expected between " + from + " and " + to + " but was " + actual.getTime());
+    }
+}